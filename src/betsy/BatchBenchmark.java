@@ -0,0 +1,98 @@
+package betsy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import betsy.log.Log;
+
+/**
+ * Compares interpreting messages one at a time with
+ * BetsyEngine.interpretBatch(). The messages of a transcript are dealt out to
+ * a number of sessions in turn, then interpreted both ways with fresh
+ * sessions, and the messages per second of each are reported.
+ * <p>
+ * Usage: <code>BatchBenchmark transcript [sessions [threads]]</code>
+ * <br>Defaults are 16 sessions and one thread per processor.
+ * @author jacob
+ *
+ */
+public class BatchBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		if(args.length < 1) {
+			System.err.println(
+					"Usage: BatchBenchmark transcript [sessions [threads]]");
+			return;
+		}
+		List<String> lines = new ArrayList<>();
+		for(String line : Files.readAllLines(Paths.get(args[0]),
+				StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if(!line.isEmpty() && line.charAt(0) != '#')
+				lines.add(line);
+		}
+		int numSessions = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		int threads = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+
+		System.out.println("Creating engine...");
+		BetsyEngine engine = new BetsyEngine(Log.SILENT);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		// warm up the parser and caches both ways before timing anything
+		runSingle(engine, lines, numSessions);
+		runBatch(engine, lines, numSessions, executor);
+
+		long single = runSingle(engine, lines, numSessions);
+		long batch = runBatch(engine, lines, numSessions, executor);
+		executor.shutdown();
+
+		System.out.format("%d messages, %d sessions, %d threads%n",
+				lines.size(), numSessions, threads);
+		System.out.format("One at a time: %.1f messages/sec%n",
+				lines.size() / (single / 1e9));
+		System.out.format("Batch:         %.1f messages/sec (%.2fx)%n",
+				lines.size() / (batch / 1e9), (double)single / batch);
+	}
+
+	private static List<BetsySession> newSessions(BetsyEngine engine,
+			int numSessions) {
+		List<BetsySession> sessions = new ArrayList<>(numSessions);
+		for(int i = 0; i < numSessions; i++) {
+			BetsySession session = engine.newSession(Log.SILENT);
+			session.init(false);
+			sessions.add(session);
+		}
+		return sessions;
+	}
+
+	// returns nanoseconds
+	private static long runSingle(BetsyEngine engine, List<String> lines,
+			int numSessions) {
+		List<BetsySession> sessions = newSessions(engine, numSessions);
+		long start = System.nanoTime();
+		for(int i = 0; i < lines.size(); i++)
+			sessions.get(i % numSessions).interpret(lines.get(i), true);
+		return System.nanoTime() - start;
+	}
+
+	// returns nanoseconds
+	private static long runBatch(BetsyEngine engine, List<String> lines,
+			int numSessions, ExecutorService executor) {
+		List<BetsySession> sessions = newSessions(engine, numSessions);
+		List<BetsyEngine.Message> messages = new ArrayList<>(lines.size());
+		for(int i = 0; i < lines.size(); i++)
+			messages.add(new BetsyEngine.Message(
+					sessions.get(i % numSessions), lines.get(i)));
+		long start = System.nanoTime();
+		engine.interpretBatch(messages, true, executor, Log.SILENT);
+		return System.nanoTime() - start;
+	}
+}
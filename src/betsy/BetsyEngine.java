@@ -0,0 +1,232 @@
+package betsy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
+
+import betsy.grammar.StructureTag;
+import betsy.grammar.WordTree;
+import betsy.log.Log;
+import betsy.memory.Context;
+import betsy.memory.QuestionMemory;
+import betsy.memory.ScoredQuestionMemory;
+import betsy.vocab.*;
+
+/**
+ * The parts of Betsy that every conversation shares: the parser, the
+ * vocabulary, and Betsy's knowledge, compiled once into statement trees.
+ * An engine is expensive to create, but after that any number of
+ * BetsySessions can be made from it cheaply, and used from different threads
+ * at the same time.
+ * @author jacob
+ *
+ */
+public class BetsyEngine {
+
+	private static final boolean DEBUG_LOG = false;
+
+	private static final String PARSER_MODEL =
+			"edu/stanford/nlp/models/lexparser/englishPCFG.ser.gz";
+
+	private static final String KNOWLEDGE_FILE = "betsyKnowledge.txt";
+
+	/**
+	 * One message of a batch, for interpretBatch().
+	 */
+	public static class Message {
+		final BetsySession session;
+		final String text;
+		
+		/**
+		 * @param session the session the message was said to
+		 * @param text the message
+		 */
+		public Message(BetsySession session, String text) {
+			this.session = session;
+			this.text = text;
+		}
+	}
+
+	private final LexicalizedParser parser;
+
+	// the session that learned the knowledge file, kept for writing an image
+	private final BetsySession knowledge;
+
+	// the state of a conversation after the knowledge file, which every
+	// session starts from
+	private final QuestionMemory baselineMemory;
+	private final Context baselineContext;
+	private final List<String> baselineLastSentence;
+
+	/**
+	 * Create an engine. Betsy's knowledge is loaded from a KnowledgeImage if
+	 * there is one that's up to date, otherwise the knowledge file is parsed.
+	 * @param log for progress messages
+	 */
+	public BetsyEngine(Log log) {
+		this(log, true);
+	}
+
+	/**
+	 * @param log for progress messages
+	 * @param useImage false to always parse the knowledge file
+	 */
+	BetsyEngine(Log log, boolean useImage) {
+		log.debug(() -> "  Initializing parser...");
+		parser = LexicalizedParser.loadModel(PARSER_MODEL);
+		log.debug(() -> "  Loading names...");
+		Names.loadNames();
+		log.debug(() -> "  Loading dictionary...");
+		Vocab.init();
+
+		knowledge = new BetsySession(this,
+				new ScoredQuestionMemory(Log.SILENT), new Context(),
+				Collections.emptyList(), DEBUG_LOG ? log : Log.SILENT);
+		knowledge.init(false);
+		if(!(useImage && loadImage(log))) {
+			log.debug(() -> "  Compiling knowledge...");
+			compileKnowledge(BetsyMain.getResourceLines(KNOWLEDGE_FILE), log);
+		}
+		baselineMemory = knowledge.getMemory();
+		baselineContext = new Context(knowledge.getContext());
+		baselineLastSentence = Collections.unmodifiableList(
+				knowledge.getLastSentence());
+		// fill in the trees' lazy caches now, so threads reading the shared
+		// trees later never write to them
+		for(WordTree<StructureTag> statement : baselineMemory.getStatements())
+			warm(statement);
+	}
+
+	private void compileKnowledge(List<String> facts, Log log) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			KnowledgeLoader.Result result = new KnowledgeLoader(executor,
+					threads, log).load(knowledge, facts);
+			log.debug(() -> "  " + result);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// returns false if the knowledge file has to be parsed instead
+	private boolean loadImage(Log log) {
+		Path image = KnowledgeImage.defaultPath();
+		if(!KnowledgeImage.isCurrent(image,
+				ClassLoader.getSystemResource(KNOWLEDGE_FILE)))
+			return false;
+		log.debug(() -> "  Loading knowledge image...");
+		try {
+			KnowledgeImage.read(image, knowledge);
+			return true;
+		} catch (IOException e) {
+			log.warn("Couldn't load knowledge image " + image + ": "
+					+ e.getMessage());
+			// don't keep anything from a partly read image
+			knowledge.init(false);
+			return false;
+		}
+	}
+
+	/**
+	 * Write Betsy's knowledge as a KnowledgeImage.
+	 * @param out where to write the image
+	 * @throws IOException if the image can't be written
+	 */
+	void writeKnowledgeImage(OutputStream out) throws IOException {
+		KnowledgeImage.write(knowledge, out);
+	}
+
+	private static void warm(WordTree<StructureTag> tree) {
+		tree.visitPreOrder(t -> {
+			t.hashCode();
+			if(!t.isLeaf() && t.numChildren() != 0)
+				t.hasType(t.getChild(0).getType());
+			return true;
+		});
+	}
+
+	/**
+	 * Start a new conversation. The session still needs to be init()ed.
+	 * @param log for the session's diagnostic messages
+	 * @return a new session
+	 */
+	public BetsySession newSession(Log log) {
+		return new BetsySession(this, baselineMemory, baselineContext,
+				baselineLastSentence, log);
+	}
+
+	/**
+	 * Interpret many messages at once. The parts of each message that don't
+	 * depend on its conversation -- tokenizing and both kinds of parsing --
+	 * run on the executor for all messages in parallel. Each message is
+	 * then interpreted by its session as soon as it's parsed and the
+	 * session's previous message is done, so messages to the same session
+	 * are interpreted in the order they appear in the list, and different
+	 * sessions proceed in parallel.
+	 * <p>
+	 * The sessions must not be used for anything else until this returns.
+	 * @param messages the messages, in order
+	 * @param generateResponse whether to respond to each message
+	 * @param executor where to do the work
+	 * @param log for messages that fail
+	 * @return the response to each message, in the same order. If
+	 * generateResponse is false, or a message fails, its response is null.
+	 */
+	public List<String> interpretBatch(List<Message> messages,
+			boolean generateResponse, Executor executor, Log log) {
+		List<CompletableFuture<String>> responses =
+				new ArrayList<>(messages.size());
+		// the last message given to each session so far
+		Map<BetsySession, CompletableFuture<?>> previous =
+				new IdentityHashMap<>();
+		for(Message message : messages) {
+			BetsySession session = message.session;
+			CompletableFuture<BetsySession.PreparedMessage> prepared =
+					CompletableFuture.supplyAsync(() -> session.prepare(
+							message.text, generateResponse), executor);
+			CompletableFuture<?> before = previous.get(session);
+			if(before == null)
+				before = prepared;
+			else // a failure shouldn't stop the session's later messages
+				before = before.handle((r, e) -> null);
+			CompletableFuture<String> response = before.thenCombineAsync(
+					prepared, (b, p) -> session.apply(p), executor);
+			previous.put(session, response);
+			responses.add(response);
+		}
+		
+		List<String> results = new ArrayList<>(responses.size());
+		for(int i = 0; i < responses.size(); i++) {
+			try {
+				results.add(responses.get(i).join());
+			} catch (CompletionException e) {
+				String text = messages.get(i).text;
+				log.warn("Couldn't interpret \"" + text + "\": "
+						+ e.getCause());
+				results.add(null);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Parse a sentence. Can be called from any thread.
+	 * @param tokens the tokens of the sentence
+	 * @return the parser's tree
+	 */
+	Tree parse(List<CoreLabel> tokens) {
+		return parser.apply(tokens);
+	}
+
+}
@@ -23,9 +23,10 @@ public class BetsyMain {
 	// input and output streams:
 	public static PrintStream out; // for non-bot messages to the user
 	public static BufferedReader in; // for user input
-	public static PrintStream logOut; // for debugging and demonstration
 	public static PrintStream botOut; // for messages from the bot
 	
+	private static final Log log = Log.getLog(BetsyMain.class);
+	
 	private static Bot bot;
 	
 	// information for commands to access
@@ -45,23 +46,25 @@ public class BetsyMain {
 	 * @return a new Bot
 	 */
 	private static Bot makeBot() {
-		return new BetsyBot(logOut);
+		BetsyBot betsy = new BetsyBot(Log.getLog(BetsyBot.class));
+		betsy.setParseTreeListener(logger);
+		return betsy;
 	}
 	
-	public static void main(String[] args) throws IOException {
-		logOut = System.out;
-		logOut.println("Setting up user interface...");
+	public static void main(String[] args)
+			throws IOException, InterruptedException {
+		log.info("Setting up user interface...");
 		logger = new LogFrame();
 		out = new PrintStream(logger.outputStream());
 		in = new BufferedReader(new InputStreamReader(logger.inputStream()));
 		botOut = out;
 		
-		while(!logger.isReady());
+		logger.awaitReady();
 		out.println("Please wait...");
 		
-		logOut.println("Creating bot...");
+		log.info("Creating bot...");
 		bot = makeBot();
-		logOut.println("  Done.");
+		log.info("  Done.");
 		
 		out.println();
 		
@@ -0,0 +1,797 @@
+package betsy;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.Sentence;
+import edu.stanford.nlp.trees.Tree;
+
+import betsy.grammar.*;
+import betsy.grammar.StructureTag.CategoryTag;
+import betsy.log.Log;
+import betsy.log.ParseTreeListener;
+import static betsy.grammar.StructureTag.*;
+import betsy.memory.*;
+import betsy.vocab.*;
+
+/**
+ * One conversation with Betsy the Chatbot. A session only has the state of
+ * its own conversation -- the context, memory, and the last thing the user
+ * said. Everything else, like the parser and Betsy's knowledge, belongs to
+ * the BetsyEngine that made it and is shared with every other session, so
+ * sessions are cheap to create. Each session should only be used by one
+ * thread at a time, but different sessions can be used at the same time.
+ * @author jacob
+ *
+ */
+public class BetsySession implements StatefulBot {
+	
+	private static final String WELCOME_MESSAGE =
+			"Hello! I'm Betsy the Chatbot, an advanced artificial"
+			+ " intelligence program.\n"
+			+ "Type in the box below. Please speak in simple, complete"
+			+ " sentences with correct grammar, capitalization, and"
+			+ " punctuation. You can see how I interpreted your sentence to"
+			+ " the right.\n"
+			+ "Click Reset when you are done to leave it ready for the next"
+			+ " person.";
+	private static final String CLOSING_MESSAGE = "Goodbye!";
+	
+	// Phrase lists
+	private static final String[] pError = {
+		"ERROR!"
+	};
+	private static final String[] pUnable = {
+		"I am unable to %s.", "I am not able to %s.",
+		"To %s is beyond my capabilities.", "I don't know how to %s.",
+		"I can't %s.", "I am not human. I can not %s."
+	};
+	private static final String[] pClarifyFragment = {
+		"What about %s?", "What about it?", "What do you mean?"
+	};
+	private static final String[] pGenericInterjectionResponse = {
+		"Indeed.", "I agree.", "Quite.", "Truly."
+	};
+	private static final String[] pDontKnow = {
+		"I don't know %s.", "I'm not sure about %s."
+	};
+	private static final String[] pTalkToUnknownPerson = {
+		"I can only speak to you.", "I can't talk to %s.", "I don't know %s.",
+		"I don't know who %s is."
+	};
+	private static final String[] pTalkToYourself = {
+		"I don't often talk to myself.", "I avoid talking to myself.",
+		"I value my sanity."
+	};
+	private static final String[] pTellMeWhat = {
+		"What should I tell you?", "Tell you what?"
+	};
+	private static final String[] pTryWhat = {
+		"What should I try?", "Try what?"
+	};
+	private static final String[] pBeResponse = {
+		"I can be what I want to be.", "Don't tell me how to live my life."
+	};
+	private static final String[] pDoResponse = {
+		"I can do what I want.", "Don't tell me how to live my life."
+	};
+	private static final String[] pHello = {
+		"Hello!", "Hi."
+	};
+	private static final String[] pGoodbye = {
+		"Bye!", "Goodbye."
+	};
+	private static final String[] pRepeatedSentence = {
+		"Stop saying that.", "You already said that.", "You just said that.",
+		"Again?"
+	};
+	private static final String[] pRepeatedQuestion = {
+		"I just told you.", "Stop asking me that.",
+		"I thought I already told you.", "Again?"
+	};
+	private static final String[] pNumbers = {
+		"I'm not good at math.", "I can't count."
+	};
+	private static final String[] pQuestionFragment = {
+		"What do you mean?", "%s what?"
+	};
+	
+	// "what is ___?" with an empty subject, used for commands like "tell me"
+	private static final PersistentWordTree<StructureTag> WHAT_IS_QUESTION =
+			PersistentWordTree.tree(QUESTION,
+				PersistentWordTree.tree(SUBJECT),
+				PersistentWordTree.tree(ACTION,
+					PersistentWordTree.tree(VERB_PHRASE,
+						PersistentWordTree.leaf(VERB, "be"),
+						PersistentWordTree.leaf(TENSE_TIME, "PRESENT"),
+						PersistentWordTree.leaf(TENSE_FRAME, "SIMPLE"),
+						PersistentWordTree.tree(OBJECT,
+							PersistentWordTree.tree(NOUN_PHRASE,
+								PersistentWordTree.leaf(QUESTION_PRONOUN,
+										"what"))))));
+	
+	private final BetsyEngine engine;
+	// the state after the engine's knowledge, shared by every session
+	private final QuestionMemory baselineMemory;
+	private final Context baselineContext;
+	private final List<String> baselineLastSentence;
+	private Log log;
+	private ParseTreeListener treeListener;
+	
+	private QuestionMemory memory;
+	private Context context;
+	// the last sentence the user said as a list of tokens, not including
+	// punctuation
+	private List<String> lastSentence;
+	
+	private final SentenceConstructor constructor;
+	
+	private final Formatter formatter;
+	private final StringBuilder formatStringBuilder;
+	
+	private String response;
+	
+	/**
+	 * Sessions are made by BetsyEngine.newSession().
+	 * @param engine the engine that parses the user's sentences
+	 * @param baselineMemory what every conversation starts out knowing.
+	 * Each init() makes an overlay of it, so it is never modified.
+	 * @param baselineContext the context every conversation starts with. It
+	 * is copied, never modified.
+	 * @param baselineLastSentence the last sentence of the knowledge
+	 * @param log for diagnostic messages
+	 */
+	BetsySession(BetsyEngine engine, QuestionMemory baselineMemory,
+			Context baselineContext, List<String> baselineLastSentence,
+			Log log) {
+		this.engine = engine;
+		this.baselineMemory = baselineMemory;
+		this.baselineContext = baselineContext;
+		this.baselineLastSentence = baselineLastSentence;
+		this.log = log;
+		treeListener = ParseTreeListener.NONE;
+		formatStringBuilder = new StringBuilder();
+		formatter = new Formatter(formatStringBuilder);
+		constructor = new RecursiveSentenceConstructor(log);
+	}
+	
+
+	/**
+	 * Set where to show the parse tree of each sentence the user says.
+	 * @param treeListener the listener, or ParseTreeListener.NONE
+	 */
+	public void setParseTreeListener(ParseTreeListener treeListener) {
+		this.treeListener = treeListener;
+	}
+
+	@Override
+	public String getName() {
+		return "Betsy";
+	}
+
+	@Override
+	public String init(boolean generateResponse) {
+		log.info("Initializing bot...");
+		// nothing here depends on how much Betsy knows
+		context = new Context(baselineContext);
+		memory = baselineMemory.overlay(log);
+		lastSentence = baselineLastSentence;
+		
+		log.info("  Done.");
+		log.info("Ready.");
+		
+		if(generateResponse)
+			return WELCOME_MESSAGE;
+		else
+			return null;
+	}
+
+	/**
+	 * Forget the context, as if starting a new conversation, but keep
+	 * everything in memory. Used by the KnowledgeLoader between facts.
+	 */
+	void clearContext() {
+		context = new Context();
+	}
+	
+	QuestionMemory getMemory() {
+		return memory;
+	}
+	
+	Context getContext() {
+		return context;
+	}
+	
+	List<String> getLastSentence() {
+		return lastSentence;
+	}
+	
+	@Override
+	public byte[] saveState() {
+		int capacity = 1024;
+		while(true) {
+			ByteBuffer buffer = ByteBuffer.allocate(capacity);
+			try {
+				writeState(buffer);
+				return Arrays.copyOf(buffer.array(), buffer.position());
+			} catch (BufferOverflowException e) {
+				capacity *= 2;
+			}
+		}
+	}
+	
+	// only what the user added is written -- the baseline is the engine's
+	private void writeState(ByteBuffer buffer) {
+		WordTreeCodec.Encoder encoder = new WordTreeCodec.Encoder();
+		if(!encoder.writeHeader(buffer))
+			throw new BufferOverflowException();
+		context.write(encoder, buffer);
+		
+		List<WordTree<StructureTag>> statements = memory.getStatements();
+		int baselineSize = baselineMemory.getStatements().size();
+		buffer.putInt(statements.size() - baselineSize);
+		for(int i = baselineSize; i < statements.size(); i++)
+			if(!encoder.encode(statements.get(i), buffer))
+				throw new BufferOverflowException();
+		
+		if(lastSentence == baselineLastSentence) {
+			buffer.putInt(-1);
+		} else {
+			buffer.putInt(lastSentence.size());
+			for(String token : lastSentence) {
+				byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+				buffer.putInt(bytes.length);
+				buffer.put(bytes);
+			}
+		}
+	}
+	
+	@Override
+	public void restoreState(byte[] state) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(state);
+		WordTreeCodec.Decoder decoder = new WordTreeCodec.Decoder();
+		try {
+			decoder.readHeader(buffer);
+			Context restoredContext = Context.read(decoder, buffer);
+			
+			List<WordTree<StructureTag>> statements = new ArrayList<>();
+			int numStatements = buffer.getInt();
+			if(numStatements < 0)
+				throw new IOException("Bad statement count " + numStatements);
+			for(int i = 0; i < numStatements; i++) {
+				WordTree<StructureTag> statement = decoder.decode(buffer);
+				if(statement == null)
+					throw new IOException("Session state is incomplete");
+				statements.add(statement);
+			}
+			
+			List<String> restoredLastSentence = baselineLastSentence;
+			int numTokens = buffer.getInt();
+			if(numTokens < -1)
+				throw new IOException("Bad token count " + numTokens);
+			if(numTokens != -1) {
+				// a corrupt count can't make a huge list: every token is at
+				// least 4 bytes
+				restoredLastSentence = new ArrayList<>(
+						Math.min(numTokens, buffer.remaining() / 4));
+				for(int i = 0; i < numTokens; i++) {
+					int length = buffer.getInt();
+					if(length < 0 || length > buffer.remaining())
+						throw new IOException("Bad token length " + length);
+					byte[] bytes = new byte[length];
+					buffer.get(bytes);
+					restoredLastSentence.add(
+							new String(bytes, StandardCharsets.UTF_8));
+				}
+			}
+			
+			init(false);
+			context = restoredContext;
+			for(WordTree<StructureTag> statement : statements)
+				memory.storeStatement(statement);
+			lastSentence = restoredLastSentence;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Session state is incomplete");
+		}
+	}
+
+	@Override
+	public String interpret(String text, boolean generateResponse) {
+		return apply(prepare(text, generateResponse));
+	}
+	
+	/**
+	 * A message that has been tokenized and parsed, but not interpreted yet.
+	 */
+	static class PreparedMessage {
+		final List<PreparedSentence> sentences;
+		
+		PreparedMessage(List<PreparedSentence> sentences) {
+			this.sentences = sentences;
+		}
+	}
+	
+	static class PreparedSentence {
+		// as the user said it, for the log
+		final List<CoreLabel> said;
+		final List<CoreLabel> tokens;
+		final List<String> tokensWithoutPunctuation;
+		final boolean respond;
+		final boolean hasNumber;
+		// null if the sentence is empty or has a number
+		final WordTree<StructureTag> parseTree;
+		
+		PreparedSentence(List<CoreLabel> said, List<CoreLabel> tokens,
+				List<String> tokensWithoutPunctuation, boolean respond,
+				boolean hasNumber, WordTree<StructureTag> parseTree) {
+			this.said = said;
+			this.tokens = tokens;
+			this.tokensWithoutPunctuation = tokensWithoutPunctuation;
+			this.respond = respond;
+			this.hasNumber = hasNumber;
+			this.parseTree = parseTree;
+		}
+	}
+	
+	/**
+	 * Do everything to a message that doesn't depend on the conversation:
+	 * tokenize it, split it into sentences, and parse each one. Doesn't
+	 * change the session, so it can be called from any thread, at the same
+	 * time as anything else.
+	 * @param text the user's message
+	 * @param generateResponse whether to respond to the user
+	 * @return the prepared message, to pass to apply()
+	 */
+	PreparedMessage prepare(String text, boolean generateResponse) {
+		String[] tokens = TokenUtils.tokenize(text);
+		tokens = Vocab.replaceContractions(tokens);
+		
+		List<CoreLabel> words = Sentence.toCoreLabelList(tokens);
+		
+		List<List<CoreLabel>> sentences =
+				TokenUtils.splitSentences(words);
+		
+		List<PreparedSentence> prepared = new ArrayList<>(sentences.size());
+		int i = 0;
+		for(List<CoreLabel> sentence : sentences) {
+			boolean lastSentence = i == sentences.size() - 1;
+			prepared.add(prepareSentence(sentence,
+					lastSentence && generateResponse));
+			i++;
+		}
+		return new PreparedMessage(prepared);
+	}
+	
+	private PreparedSentence prepareSentence(List<CoreLabel> tokens,
+			boolean respond) {
+		List<CoreLabel> said = tokens;
+		
+		//check for phrases like How are you doing, Betsy?
+		if(respond) {
+			said = new ArrayList<>(tokens);
+			int lastTokenIndex = tokens.size()-1;
+			String lastToken = tokens.get(lastTokenIndex).toString();
+			
+			if(TokenUtils.isPunctuation(lastToken.charAt(0))) {
+				lastTokenIndex--;
+				lastToken = tokens.get(lastTokenIndex).toString();
+			}
+			
+			if(lastToken.toLowerCase().equals("betsy")) {
+				tokens.remove(lastTokenIndex);
+				lastTokenIndex--;
+				lastToken = tokens.get(lastTokenIndex).toString();
+				if(TokenUtils.isPunctuation(lastToken.charAt(0)))
+					tokens.remove(lastTokenIndex);
+			}
+			
+			if(tokens.size() > 2) {
+				while(tokens.size() > 0) {
+					String firstToken = tokens.get(0).toString().toLowerCase();
+					if(firstToken.equals("well") || firstToken.equals("so")
+							|| firstToken.equals("okay")
+							|| firstToken.equals("but")
+							|| firstToken.equals("betsy")
+							|| firstToken.equals("ok")
+							|| TokenUtils.isPunctuation(firstToken.charAt(0)))
+						tokens.remove(0);
+					else
+						break;
+				}
+				
+			}
+		}
+		
+		List<String> tokensWithoutPunctuation = new ArrayList<>();
+		for(CoreLabel l : tokens) {
+			String s = l.toString().toLowerCase();
+			if(!TokenUtils.isPunctuation(s.charAt(0)))
+				tokensWithoutPunctuation.add(s);
+		}
+		
+		// check for numbers
+		boolean hasNumber = false;
+		for(String s : tokensWithoutPunctuation) {
+			try {
+				Integer.parseInt(s);
+				hasNumber = true;
+				break;
+			} catch (NumberFormatException e) { }
+		}
+		
+		WordTree<StructureTag> parseTree = null;
+		if(!tokensWithoutPunctuation.isEmpty() && !hasNumber) {
+			// if the user is repeating themselves, this parse won't be used
+			Tree tree = engine.parse(tokens);
+			WordTree<Tag> wordTree = Tag.fromTree(tree);
+			log.debug(() -> wordTree.toString());
+			SentenceStructureParser parse = new RecursiveStructureParser(log);
+			parseTree = parse.parseTree(wordTree);
+		}
+		return new PreparedSentence(said, tokens, tokensWithoutPunctuation,
+				respond, hasNumber, parseTree);
+	}
+	
+	/**
+	 * Interpret a prepared message, and respond if it was prepared with
+	 * generateResponse.
+	 * @param message the message from prepare()
+	 * @return a response if generateResponse was true
+	 */
+	String apply(PreparedMessage message) {
+		log.info("--------------------------------");
+		treeListener.clearTree();
+		
+		log.info(() -> "User said " + message.sentences.size()
+				+ " sentence(s)");
+		
+		response = "";
+		
+		for(PreparedSentence sentence : message.sentences) {
+			// stop between sentences if an async turn was cancelled
+			if(Thread.currentThread().isInterrupted())
+				throw new CancellationException("Interrupted");
+			interpretSentence(sentence);
+		}
+		
+		return response;
+	}
+	
+	private void interpretSentence(PreparedSentence sentence) {
+		log.info(() -> "User said: " + TokenUtils.detokenize(sentence.said));
+		List<CoreLabel> tokens = sentence.tokens;
+		boolean respond = sentence.respond;
+		log.debug(() -> tokens.toString());
+		
+		if(sentence.tokensWithoutPunctuation.size() == 0)
+			return;
+		
+		// check if the user just said that
+		if(sentence.tokensWithoutPunctuation.equals(lastSentence)) {
+			if(respond) {
+				if(tokens.get(tokens.size() - 1).toString().equals("?"))
+					this.response = randomPhrase(pRepeatedQuestion);
+				else
+					this.response = randomPhrase(pRepeatedSentence);
+			}
+			return;
+		}
+		
+		lastSentence = sentence.tokensWithoutPunctuation;
+		
+		if(sentence.hasNumber) {
+			if(respond)
+				this.response = randomPhrase(pNumbers);
+			return;
+		}
+		
+		WordTree<StructureTag> parseTree = sentence.parseTree;
+	    treeListener.addTree(parseTree);
+	    
+	    List<WordTree<StructureTag>> phrases = splitPhrases(parseTree);
+	    log.info(() -> "This sentence has " + phrases.size() + " phrase(s).");
+	    int i = 0;
+	    for(WordTree<StructureTag> phrase : phrases) {
+	    	boolean respondToPhrase = (i == phrases.size() - 1) && respond;
+	    	// the only copy -- from here on the phrase is shared, not cloned
+	    	String response = interpretPhrase(PersistentWordTree.of(phrase),
+	    			respondToPhrase);
+	    	if(respondToPhrase)
+	    		this.response = response;
+	    	i++;
+	    }
+	    
+	    return;
+	}
+	
+	@SuppressWarnings("incomplete-switch")
+	private String interpretPhrase(PersistentWordTree<StructureTag> parsed,
+			boolean respond) {
+		
+		PersistentWordTree<StructureTag> tree =
+				context.replaceContext(parsed);
+		context.interpretContext(tree);
+		log.debug(() -> "Current context:\n" +
+    			context.getContextDescription(constructor));
+		
+		String phrase = constructor.constructSentence(tree, false);
+		String sentence = constructor.constructSentence(tree, true);
+		String response = randomPhrase(pError);
+		
+		switch(tree.getType()) {
+		case STATEMENT:
+			log.info(() -> "User said a statement: " + sentence);
+			response = sentence;
+			memory.storeStatement(tree.toWordTree());
+			break;
+		case COMMAND:
+			log.info(() -> "User told me to: " + sentence);
+			response = interpretCommand(tree.getType(ACTION)
+					.getType(VERB_PHRASE));
+			break;
+		case QUESTION:
+		case YES_NO:
+			log.info(() -> "User asked: " + sentence);
+			WordTree<StructureTag> bestMatch =
+					memory.filterQuestion(tree.toWordTree());
+			if(bestMatch == null) {
+				log.info("No good answer found.");
+				response = format(randomPhrase(pDontKnow), phrase);
+			} else {
+				String answer = constructor.constructSentence(bestMatch, true);
+				log.info(() -> "Best answer: " + answer);
+				response = answer;
+			}
+			break;
+		case INTERJECTION_PHRASE:
+			log.info("Interjection...");
+			response = randomPhrase(pGenericInterjectionResponse);
+			for(PersistentWordTree<StructureTag> child : tree.getChildren()) {
+				String interjectionResponse =
+						interpretInterjection(child.getWord());
+				if(interjectionResponse != null) {
+					log.info(() -> "Response to " + child.getWord() +
+							": " + interjectionResponse);
+					response = interjectionResponse;
+				}
+			}
+			break;
+		case FRAGMENT_NOUN:
+		case FRAGMENT_ADJECTIVE:
+		case FRAGMENT_ADVERB:
+			//TODO: more intelligent response
+			log.info("Fragment");
+			
+			//check for interjection words
+			String interjectionResponse = tryInterjectionRecursive(tree);
+			if(interjectionResponse != null) {
+				response = interjectionResponse;
+			} else {
+				response = format(randomPhrase(pClarifyFragment), phrase);
+			}
+			break;
+		case QUESTION_FRAGMENT:
+			response = format(randomPhrase(pQuestionFragment), phrase);
+			break;
+		}
+		
+//		if(tree.hasType(StructureTag.SUBJECT)) {
+//			WordTree<StructureTag> subject =
+//					tree.getType(StructureTag.SUBJECT);
+//			logOut.println("Matching statements:");
+//			int i = 0;
+//			for(WordTree<StructureTag> matched
+//					: memory.filter(subject)) {
+//				logOut.println("  " + matched.wordListToString());
+//				i++;
+//			}
+//			if(i == 0)
+//				logOut.println("  Nothing.");
+//		} else {
+//			logOut.println("No subject.");
+//		}
+    	
+    	
+    	if(respond)
+    		return response;
+    	else
+    		return null;
+	}
+	
+	private String interpretCommand(
+			PersistentWordTree<StructureTag> verbPhrase) {
+		String verb;
+		try {
+			verb = verbPhrase.getType(VERB).getWord();
+		} catch (NullPointerException e) {
+			return randomPhrase(pError);
+		}
+		
+		if(verb.equals("be")) {
+			return randomPhrase(pBeResponse);
+		}
+		if(verb.equals("have")) {
+			
+		}
+		if(verb.equals("do")) {
+			return randomPhrase(pDoResponse);
+		}
+		if(verb.equals("think")) {
+			return format(randomPhrase(pUnable), verb);
+		}
+		if(verb.equals("tell") || verb.equals("show") || verb.equals("give")
+				|| verb.equals("find") || verb.equals("say")
+				|| verb.equals("write") || verb.equals("read")) {
+			String indirectObjectResponse =
+					checkForInvalidIndirectObject(verbPhrase);
+			if(indirectObjectResponse != null)
+				return indirectObjectResponse;
+			PersistentWordTree<StructureTag> object =
+					verbPhrase.getType(OBJECT);
+			if(object == null)
+				return randomPhrase(pTellMeWhat);
+			if(object.numChildren() == 0)
+				return randomPhrase(pTellMeWhat);
+			PersistentWordTree<StructureTag> objectChild = object.getChild(0);
+			
+			//construct a question tree: "what is [object]?"
+			// SUBJECT is the first child; the rest is shared with the template
+			PersistentWordTree<StructureTag> question =
+					WHAT_IS_QUESTION.setChild(0,
+					PersistentWordTree.tree(SUBJECT, objectChild));
+			return interpretPhrase(question, true);
+		}
+		if(verb.equals("ask")) {
+			String indirectObjectResponse =
+					checkForInvalidIndirectObject(verbPhrase);
+			if(indirectObjectResponse != null)
+				return indirectObjectResponse;
+		}
+		if(verb.equals("try") || verb.equals("keep")) {
+			if(!verbPhrase.hasType(OBJECT)) {
+				return randomPhrase(pTryWhat);
+			}
+			PersistentWordTree<StructureTag> object =
+					verbPhrase.getType(OBJECT);
+			if(object.numChildren() == 0) {
+				return randomPhrase(pTryWhat);
+			}
+			if(!object.hasType(VERB_PHRASE)) {
+				return format(randomPhrase(pUnable), verb);
+			}
+			PersistentWordTree<StructureTag> tryVerbPhrase =
+					object.getType(VERB_PHRASE);
+			
+			//construct a command tree
+			PersistentWordTree<StructureTag> command =
+					PersistentWordTree.tree(COMMAND,
+					PersistentWordTree.tree(ACTION, tryVerbPhrase));
+			return interpretPhrase(command, true);
+		}
+		if(verb.equals("believe")) {
+			
+		}
+		if(verb.equals("talk")) {
+			
+		}
+		if(verb.equals("let")) {
+			
+		}
+		if(verb.equals("remember")) {
+			
+		}
+		if(verb.equals("stop")) {
+			return randomPhrase(pDoResponse);
+		}
+		if(verb.equals("describe")) {
+			
+		}
+		
+		String interpretInterjection = interpretInterjection(verb);
+		if(interpretInterjection != null)
+			return interpretInterjection;
+		
+		return format(randomPhrase(pUnable), verb);
+	}
+	
+	/**
+	 * Make sure the user isn't asking Betsy to, e.g. talk to somebody besides
+	 * the user.
+	 */
+	private String checkForInvalidIndirectObject(
+			PersistentWordTree<StructureTag> verbPhrase) {
+		if(verbPhrase.hasType(INDIRECT_OBJECT)) {
+			PersistentWordTree<StructureTag> nounPhrase =
+					verbPhrase.getType(INDIRECT_OBJECT)
+					.getType(NOUN_PHRASE);
+			if(nounPhrase != null) {
+				if(nounPhrase.hasLeaf(PRONOUN, "me")
+						|| nounPhrase.hasLeaf(PRONOUN, "myself")) {
+					return randomPhrase(pTalkToYourself);
+				}
+				if(!nounPhrase.hasLeaf(PRONOUN, "you")
+						&& !nounPhrase.hasLeaf(PRONOUN, "yourself")) {
+					return format(randomPhrase(pTalkToUnknownPerson),
+							constructor.constructSentence(nounPhrase,
+							false));
+				}
+			}
+		}
+		return null;
+	}
+	
+	private String tryInterjectionRecursive(
+			PersistentWordTree<StructureTag> tree) {
+		if(tree.isLeaf()) {
+			String response = interpretInterjection(tree.getWord());
+			if(response != null) {
+				log.info(() -> "Response to " + tree.getWord() +
+						": " + response);
+			}
+			return response;
+		} else {
+			for(int i = 0; i < tree.numChildren(); i++) {
+				String response = tryInterjectionRecursive(tree.getChild(i));
+				if(response != null)
+					return response;
+			}
+			return null;
+		}
+	}
+	
+	private String interpretInterjection(String word) {
+		if(word.equals("hi") || word.equals("hello") || word.equals("hey"))
+			return randomPhrase(pHello);
+		if(word.equals("goodbye") || word.equals("bye"))
+			return randomPhrase(pGoodbye);
+		if(word.equals("thank") || word.equals("thanks"))
+			return "You're welcome.";
+
+		return null;
+	}
+	
+	private List<WordTree<StructureTag>> splitPhrases(
+			WordTree<StructureTag> tree) {
+		List<WordTree<StructureTag>> phrases = new ArrayList<>();
+		splitPhrases(tree, phrases);
+		return phrases;
+	}
+	
+	private void splitPhrases(WordTree<StructureTag> tree,
+			List<WordTree<StructureTag>> phrases) {
+		StructureTag tag = tree.getType();
+		
+		if(tag.isA(CategoryTag.CONTAINS_PHRASE))
+			for(int i = 0; i < tree.numChildren(); i++)
+				splitPhrases(tree.getChild(i), phrases);
+		else if(tag.isA(CategoryTag.PHRASE))
+			phrases.add(tree);
+	}
+	
+	private String randomPhrase(String[] list) {
+		return list[ThreadLocalRandom.current().nextInt(list.length)];
+	}
+	
+	private String format(String format, Object... args) {
+		if(formatStringBuilder.length() > 0)
+			formatStringBuilder.delete(0, formatStringBuilder.length());
+		formatter.format(format, args);
+		return formatStringBuilder.toString();
+	}
+
+	@Override
+	public String close(boolean generateResponse) {
+		if(generateResponse)
+			return CLOSING_MESSAGE;
+		else
+			return null;
+	}
+	
+}
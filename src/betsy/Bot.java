@@ -1,5 +1,9 @@
 package betsy;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 /**
  * An interface for a Chatbot.
  * @author jacob
@@ -29,6 +33,40 @@ public interface Bot {
 	 */
 	String interpret(String text, boolean generateResponse);
 	
+	/**
+	 * Interpret user's input and respond, without waiting. Turns for the same
+	 * Bot are run one at a time, in the order they were started. A turn
+	 * waiting for the one before it doesn't use one of the executor's
+	 * threads. Cancelling the future with
+	 * mayInterruptIfRunning interrupts the turn if it has started; a turn
+	 * that is interrupted partway through may have interpreted only some of
+	 * the message.
+	 * @param text the user's message
+	 * @param executor where to run the turn
+	 * @return a future that completes with the response
+	 */
+	default CompletableFuture<String> interpretAsync(String text,
+			Executor executor) {
+		return Turn.start(this, () -> interpret(text, true), executor);
+	}
+	
+	/**
+	 * Interpret user's input and respond, without waiting, giving up if it
+	 * takes too long. Like interpretAsync(text, executor), but if the turn
+	 * isn't done in time it is interrupted and the future fails with a
+	 * TimeoutException.
+	 * @param text the user's message
+	 * @param executor where to run the turn
+	 * @param timeout how long to wait for the response
+	 * @param unit the unit of the timeout
+	 * @return a future that completes with the response
+	 */
+	default CompletableFuture<String> interpretAsync(String text,
+			Executor executor, long timeout, TimeUnit unit) {
+		return Turn.timeout(Turn.start(this, () -> interpret(text, true),
+				executor), timeout, unit);
+	}
+	
 	/**
 	 * End the conversation. Can be called multiple times during the lifetime
 	 * of the bot.
@@ -0,0 +1,85 @@
+package betsy;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import betsy.log.Log;
+
+/**
+ * Runs Betsy without a user interface, for servers and scripted
+ * conversations. Reads one message per line from a transcript file, or from
+ * standard input if no file is given, and writes each of Betsy's responses on
+ * standard output. Blank lines and lines starting with '#' are skipped. When
+ * the input ends, the number of turns per second is reported on standard
+ * error, along with any other progress messages, so that standard output only
+ * has responses.
+ * <p>
+ * Usage: <code>HeadlessMain [-v] [transcript]</code>
+ * <br>-v: write Betsy's diagnostic log where log4j.properties sends it.
+ * It is discarded by default.
+ * @author jacob
+ *
+ */
+public class HeadlessMain {
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		boolean verbose = false;
+		String transcript = null;
+		for(String arg : args) {
+			if(arg.equals("-v"))
+				verbose = true;
+			else
+				transcript = arg;
+		}
+
+		BufferedReader in;
+		if(transcript == null)
+			in = new BufferedReader(new InputStreamReader(System.in,
+					StandardCharsets.UTF_8));
+		else
+			in = new BufferedReader(new InputStreamReader(
+					new FileInputStream(transcript), StandardCharsets.UTF_8));
+		// a transcript is written in one go at the end; a person typing on
+		// standard input needs to see each response right away
+		boolean interactive = transcript == null && System.console() != null;
+		PrintStream out = new PrintStream(new BufferedOutputStream(
+				new FileOutputStream(FileDescriptor.out)), interactive, "UTF-8");
+
+		System.err.println("Creating bot...");
+		Bot bot = new BetsyBot(verbose ? Log.getLog(BetsyBot.class)
+				: Log.SILENT);
+		bot.init(false);
+		System.err.println("  Done.");
+
+		int turns = 0;
+		long time = 0;
+		String line;
+		while((line = in.readLine()) != null) {
+			line = line.trim();
+			if(line.isEmpty() || line.charAt(0) == '#')
+				continue;
+
+			long start = System.nanoTime();
+			String response;
+			try {
+				response = bot.interpret(line, true);
+			} catch (Exception e) {
+				e.printStackTrace();
+				response = "ERROR!";
+			}
+			time += System.nanoTime() - start;
+			turns++;
+
+			out.println(response);
+		}
+		in.close();
+		bot.close(false);
+		out.flush();
+
+		double seconds = time / 1e9;
+		System.err.format("%d turns in %.3f s (%.1f turns/sec)%n", turns,
+				seconds, seconds == 0 ? 0 : turns / seconds);
+	}
+}
@@ -0,0 +1,140 @@
+package betsy;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import betsy.log.Log;
+
+/**
+ * Betsy's knowledge, compiled ahead of time so the knowledge file doesn't
+ * have to be parsed every time an engine is created. The image is built by
+ * running this class's main method, which interprets the knowledge file once
+ * and writes the state of the session that learned it -- the statement
+ * trees, the context and the last sentence -- as BetsySession.saveState()
+ * would.
+ * <p>
+ * File layout (all integers are big-endian):
+ * <pre>
+ * int magic, int version, int length, session state
+ * </pre>
+ * @author jacob
+ *
+ */
+public class KnowledgeImage {
+
+	/**
+	 * The file used if the betsy.knowledge system property isn't set.
+	 */
+	public static final String DEFAULT_FILE = "betsyKnowledge.bin";
+
+	private static final int MAGIC = 0x424b4e49; // "BKNI"
+	// the session state has its own version, which is checked separately
+	private static final int VERSION = 1;
+
+	private KnowledgeImage() { }
+
+	/**
+	 * @return the image named by the betsy.knowledge system property, or
+	 * DEFAULT_FILE in the working directory
+	 */
+	static Path defaultPath() {
+		return Paths.get(System.getProperty("betsy.knowledge",
+				DEFAULT_FILE));
+	}
+
+	/**
+	 * Check if an image exists and is at least as new as the knowledge file
+	 * it was compiled from.
+	 * @param image the image file
+	 * @param source the knowledge file, or null if there isn't one
+	 * @return true if the image can be used instead of the knowledge file
+	 */
+	static boolean isCurrent(Path image, URL source) {
+		if(!Files.isRegularFile(image))
+			return false;
+		if(source == null)
+			return true;
+		try {
+			return Files.getLastModifiedTime(image).toMillis()
+					>= lastModified(source);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static long lastModified(URL url) {
+		try {
+			URLConnection connection = url.openConnection();
+			long lastModified = connection.getLastModified();
+			connection.getInputStream().close();
+			return lastModified;
+		} catch (IOException e) {
+			// unknown, so assume the source has changed
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Write the state of a session that has learned the knowledge file.
+	 * @param session the session
+	 * @param out where to write the image
+	 * @throws IOException if the image can't be written
+	 */
+	static void write(BetsySession session, OutputStream out)
+			throws IOException {
+		byte[] state = session.saveState();
+		DataOutputStream data = new DataOutputStream(
+				new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(state.length);
+		data.write(state);
+		data.flush();
+	}
+
+	/**
+	 * Read an image into a session, which then knows everything it would
+	 * if it had learned the knowledge file.
+	 * @param image the image file
+	 * @param session the session to restore
+	 * @throws IOException if the file can't be read, or isn't an image this
+	 * version of Betsy can use
+	 */
+	static void read(Path image, BetsySession session) throws IOException {
+		try(DataInputStream data = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(image)))) {
+			if(data.readInt() != MAGIC)
+				throw new IOException("Not a knowledge image");
+			int version = data.readInt();
+			if(version != VERSION)
+				throw new IOException("Unsupported knowledge image version "
+						+ version);
+			int length = data.readInt();
+			if(length < 0)
+				throw new IOException("Bad knowledge image length " + length);
+			byte[] state = new byte[length];
+			data.readFully(state);
+			session.restoreState(state);
+		}
+	}
+
+	/**
+	 * Compile the knowledge file into an image.
+	 * @param args the file to write, or nothing to write the default file
+	 * @throws IOException if the image can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		Path file = args.length > 0 ? Paths.get(args[0]) : defaultPath();
+		System.out.println("Compiling knowledge...");
+		BetsyEngine engine = new BetsyEngine(Log.SILENT, false);
+		try(OutputStream out = Files.newOutputStream(file)) {
+			engine.writeKnowledgeImage(out);
+		}
+		System.out.println("Wrote " + file);
+	}
+}
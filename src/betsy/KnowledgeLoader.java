@@ -0,0 +1,213 @@
+package betsy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import betsy.log.Log;
+
+/**
+ * Teaches a session a list of facts, as if the user had said each one, with
+ * the context cleared after each. The facts don't depend on each other until
+ * they're stored, so they're tokenized and parsed in parallel, and only
+ * interpreted one at a time, in order. Betsy ends up knowing exactly what she
+ * would if the facts were interpreted one by one.
+ * <p>
+ * Running the main method loads a knowledge file into a new session and
+ * reports how fast it went.
+ * <br>Usage: <code>KnowledgeLoader knowledge [threads]</code>
+ * @author jacob
+ *
+ */
+public class KnowledgeLoader {
+
+	/**
+	 * What happened when a list of facts was loaded.
+	 */
+	public static class Result {
+		private final int numFacts;
+		private final int numStatements;
+		private final List<Failure> failures;
+		private final long nanos;
+
+		Result(int numFacts, int numStatements, List<Failure> failures,
+				long nanos) {
+			this.numFacts = numFacts;
+			this.numStatements = numStatements;
+			this.failures = Collections.unmodifiableList(failures);
+			this.nanos = nanos;
+		}
+
+		public int getNumFacts() {
+			return numFacts;
+		}
+
+		/**
+		 * @return how many statements were stored in memory
+		 */
+		public int getNumStatements() {
+			return numStatements;
+		}
+
+		/**
+		 * @return the facts that couldn't be interpreted, in order
+		 */
+		public List<Failure> getFailures() {
+			return failures;
+		}
+
+		public double getFactsPerSecond() {
+			return nanos == 0 ? 0 : numFacts / (nanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"%d facts, %d statements, %d failed, %.1f facts/sec",
+					numFacts, numStatements, failures.size(),
+					getFactsPerSecond());
+		}
+	}
+
+	/**
+	 * A fact that couldn't be interpreted.
+	 */
+	public static class Failure {
+		private final int line;
+		private final String fact;
+		private final Throwable cause;
+
+		Failure(int line, String fact, Throwable cause) {
+			this.line = line;
+			this.fact = fact;
+			this.cause = cause;
+		}
+
+		/**
+		 * @return the line number of the fact, starting at 1
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		public String getFact() {
+			return fact;
+		}
+
+		public Throwable getCause() {
+			return cause;
+		}
+
+		@Override
+		public String toString() {
+			return "Line " + line + " \"" + fact + "\": " + cause;
+		}
+	}
+
+	private final Executor executor;
+	// how many facts can be parsed ahead of the one being stored
+	private final int window;
+	private final Log log;
+
+	/**
+	 * @param executor where to parse the facts
+	 * @param parallelism how many threads the executor has
+	 * @param log for facts that fail
+	 */
+	public KnowledgeLoader(Executor executor, int parallelism, Log log) {
+		this.executor = executor;
+		this.window = Math.max(1, parallelism) * 4;
+		this.log = log;
+	}
+
+	/**
+	 * Teach a session some facts. The session must not be used for anything
+	 * else until this returns.
+	 * @param session the session, which has been init()ed
+	 * @param facts the facts, one or more sentences each
+	 * @return what happened
+	 */
+	public Result load(BetsySession session, List<String> facts) {
+		long start = System.nanoTime();
+		int statementsBefore = session.getMemory().getStatements().size();
+		List<Failure> failures = new ArrayList<>();
+
+		// parsing runs ahead of storing by at most the window, so the parse
+		// trees of a big file are never all in memory at once
+		Queue<CompletableFuture<BetsySession.PreparedMessage>> pending =
+				new ArrayDeque<>(window);
+		int next = 0;
+		for(int i = 0; i < facts.size(); i++) {
+			while(next < facts.size() && next < i + window) {
+				String fact = facts.get(next);
+				pending.add(CompletableFuture.supplyAsync(
+						() -> session.prepare(fact, false), executor));
+				next++;
+			}
+			CompletableFuture<BetsySession.PreparedMessage> prepared =
+					pending.remove();
+			try {
+				session.apply(prepared.join());
+			} catch (CompletionException e) {
+				failures.add(fail(i, facts.get(i), e.getCause()));
+			} catch (RuntimeException e) {
+				failures.add(fail(i, facts.get(i), e));
+			}
+			session.clearContext();
+		}
+
+		int statements = session.getMemory().getStatements().size()
+				- statementsBefore;
+		return new Result(facts.size(), statements, failures,
+				System.nanoTime() - start);
+	}
+
+	private Failure fail(int index, String fact, Throwable cause) {
+		Failure failure = new Failure(index + 1, fact, cause);
+		log.warn("Couldn't learn " + failure);
+		return failure;
+	}
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		if(args.length < 1) {
+			System.err.println("Usage: KnowledgeLoader knowledge [threads]");
+			return;
+		}
+		List<String> facts = Files.readAllLines(Paths.get(args[0]),
+				StandardCharsets.UTF_8);
+		int threads = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+
+		System.out.println("Creating engine...");
+		BetsyEngine engine = new BetsyEngine(Log.SILENT);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		KnowledgeLoader loader = new KnowledgeLoader(executor, threads,
+				Log.SILENT);
+
+		// warm up the parser first, so the timed run isn't paying for it
+		BetsySession warmUp = engine.newSession(Log.SILENT);
+		warmUp.init(false);
+		loader.load(warmUp, facts);
+
+		BetsySession session = engine.newSession(Log.SILENT);
+		session.init(false);
+		Result result = loader.load(session, facts);
+		executor.shutdown();
+
+		System.out.format("%d threads: %s%n", threads, result);
+		for(Failure failure : result.getFailures())
+			System.out.println(failure);
+	}
+}
@@ -0,0 +1,29 @@
+package betsy;
+
+import java.io.IOException;
+
+/**
+ * A Bot whose conversation can be saved and restored later, possibly by a
+ * different instance, so that idle conversations don't have to stay in
+ * memory.
+ * @author jacob
+ *
+ */
+public interface StatefulBot extends Bot {
+	
+	/**
+	 * Save the state of the current conversation.
+	 * @return the state, in a compact binary form
+	 */
+	byte[] saveState();
+	
+	/**
+	 * Replace the current conversation with one saved by saveState(). The
+	 * conversation continues as if it had never been saved.
+	 * @param state the saved state
+	 * @throws IOException if the state is corrupt, or can't be read by this
+	 * Bot
+	 */
+	void restoreState(byte[] state) throws IOException;
+	
+}
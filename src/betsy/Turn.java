@@ -0,0 +1,156 @@
+package betsy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * A turn of a conversation running in the background, returned by
+ * Bot.interpretAsync(). Unlike a plain CompletableFuture, cancelling a Turn
+ * with mayInterruptIfRunning interrupts the thread running it, and so does
+ * timing out. Turns for the same Bot run one at a time, in the order they were
+ * started: each one is only given to the executor once the one before it has
+ * finished, so a waiting turn doesn't hold a thread.
+ * @author jacob
+ *
+ * @param <T> the type of the result
+ */
+class Turn<T> extends CompletableFuture<T> implements Runnable {
+
+	// one thread is plenty: it only completes futures and interrupts threads
+	private static final ScheduledExecutorService timer;
+	static {
+		ScheduledThreadPoolExecutor executor =
+				new ScheduledThreadPoolExecutor(1, r -> {
+					Thread t = new Thread(r, "Betsy turn timer");
+					t.setDaemon(true);
+					return t;
+				});
+		// don't keep cancelled timeouts around until they would have fired
+		executor.setRemoveOnCancelPolicy(true);
+		timer = executor;
+	}
+
+	// the last turn started for each Bot, until it finishes. Only Bots with
+	// turns waiting or running are in the map.
+	private static final ConcurrentMap<Bot, CompletableFuture<Void>> tails =
+			new ConcurrentHashMap<>();
+
+	private final Bot bot;
+	private final Supplier<T> task;
+	// completed once the turn is done with the Bot. That can be after the
+	// turn itself completes, if it was cancelled or timed out while running.
+	private final CompletableFuture<Void> finished = new CompletableFuture<>();
+	// the thread running the task, or null. Guarded by this.
+	private Thread runner;
+
+	private Turn(Bot bot, Supplier<T> task) {
+		this.bot = bot;
+		this.task = task;
+	}
+
+	/**
+	 * Start running a task on an executor.
+	 * @param bot the Bot the task uses. No two turns for the same Bot run at
+	 * once, and they run in the order they were started.
+	 * @param task the task
+	 * @param executor where to run the task
+	 * @return the Turn, which completes with the task's result, or fails with
+	 * a RejectedExecutionException if the executor won't run it
+	 */
+	static <T> Turn<T> start(Bot bot, Supplier<T> task, Executor executor) {
+		Turn<T> turn = new Turn<>(bot, task);
+		CompletableFuture<Void> previous = tails.put(bot, turn.finished);
+		if(previous == null)
+			turn.execute(executor);
+		else
+			previous.whenComplete((v, e) -> turn.execute(executor));
+		return turn;
+	}
+
+	private void execute(Executor executor) {
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e) {
+			completeExceptionally(e);
+			finish();
+		}
+	}
+
+	// let the next turn for the Bot run
+	private void finish() {
+		// if another turn has started, it's waiting for this one
+		tails.remove(bot, finished);
+		finished.complete(null);
+	}
+
+	/**
+	 * Make a turn fail with a TimeoutException, and interrupt it, if it isn't
+	 * done in time.
+	 * @param turn the turn
+	 * @param timeout how long to wait
+	 * @param unit the unit of the timeout
+	 * @return the same turn
+	 */
+	static <T> Turn<T> timeout(Turn<T> turn, long timeout, TimeUnit unit) {
+		if(turn.isDone())
+			return turn;
+		ScheduledFuture<?> timeoutTask = timer.schedule(() -> {
+			if(turn.completeExceptionally(new TimeoutException(
+					"Turn took longer than " + timeout + " "
+					+ unit.toString().toLowerCase())))
+				turn.interruptRunner();
+		}, timeout, unit);
+		turn.whenComplete((result, e) -> timeoutTask.cancel(false));
+		return turn;
+	}
+
+	@Override
+	public void run() {
+		try {
+			// cancelled or timed out before it started
+			if(isDone())
+				return;
+			synchronized(this) {
+				runner = Thread.currentThread();
+			}
+			try {
+				// cancelled before the runner was set, so it wasn't interrupted
+				if(isDone())
+					return;
+				complete(task.get());
+			} catch (Throwable e) {
+				completeExceptionally(e);
+			} finally {
+				synchronized(this) {
+					runner = null;
+				}
+				// don't leave the executor's thread interrupted
+				Thread.interrupted();
+			}
+		} finally {
+			finish();
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if(cancelled && mayInterruptIfRunning)
+			interruptRunner();
+		return cancelled;
+	}
+
+	private synchronized void interruptRunner() {
+		if(runner != null)
+			runner.interrupt();
+	}
+}
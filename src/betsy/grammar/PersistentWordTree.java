@@ -0,0 +1,317 @@
+package betsy.grammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import betsy.vocab.SymbolTable;
+
+/**
+ * An immutable version of a WordTree. It has no parent, so the same subtree
+ * can be part of any number of trees at once. Methods that "modify" the tree
+ * return a new root, which shares every subtree that didn't change with the
+ * old one -- only the nodes on the path to the change are copied. This makes
+ * PersistentWordTrees safe to keep as snapshots, and to share between
+ * threads.
+ * Use of() and toWordTree() to convert to and from a regular WordTree, but
+ * code that only reads trees can take a WordTreeView and avoid converting.
+ * @author jacob
+ *
+ * @param <T> the type of object used to tag each tree or leaf
+ */
+public final class PersistentWordTree<T>
+		implements WordTreeView<T, PersistentWordTree<T>> {
+	private final T type;
+	private final String word;
+	private final int wordId;
+	// null for leaves
+	private final PersistentWordTree<T>[] children;
+	private final List<PersistentWordTree<T>> childList;
+
+	private PersistentWordTree(T type, String word,
+			PersistentWordTree<T>[] children) {
+		this.type = type;
+		this.children = children;
+		// words are only looked up -- trees are interned when they are stored,
+		// after toWordTree()
+		this.wordId = word == null ? SymbolTable.NONE
+				: SymbolTable.lookup(word);
+		this.word = wordId == SymbolTable.NONE ? word
+				: SymbolTable.getWord(wordId);
+		if(children == null)
+			childList = Collections.emptyList();
+		else
+			childList = Collections.unmodifiableList(Arrays.asList(children));
+	}
+
+	/**
+	 * Create a leaf.
+	 * @param type the leaf's identifying type
+	 * @param word the leaf's word
+	 * @return a new leaf
+	 */
+	public static <T> PersistentWordTree<T> leaf(T type, String word) {
+		return new PersistentWordTree<T>(type, word, null);
+	}
+
+	/**
+	 * Create a tree with the given children.
+	 * @param type the tree's identifying type
+	 * @param children the children of the tree, in order
+	 * @return a new tree
+	 */
+	@SafeVarargs
+	public static <T> PersistentWordTree<T> tree(T type,
+			PersistentWordTree<T>... children) {
+		// copied element by element, so the varargs array never escapes
+		PersistentWordTree<T>[] copy = newArray(children.length);
+		for(int i = 0; i < copy.length; i++)
+			copy[i] = children[i];
+		return new PersistentWordTree<T>(type, null, copy);
+	}
+
+	/**
+	 * Make an immutable copy of a WordTree, and everything inside it.
+	 * @param tree the WordTree to copy
+	 * @return a PersistentWordTree with the same structure
+	 */
+	public static <T> PersistentWordTree<T> of(WordTree<T> tree) {
+		if(tree.isLeaf())
+			return leaf(tree.getType(), tree.getWord());
+		PersistentWordTree<T>[] children = newArray(tree.numChildren());
+		for(int i = 0; i < children.length; i++)
+			children[i] = of(tree.getChild(i));
+		return new PersistentWordTree<T>(tree.getType(), null, children);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> PersistentWordTree<T>[] newArray(int length) {
+		return (PersistentWordTree<T>[])new PersistentWordTree<?>[length];
+	}
+
+	/**
+	 * Make a new, mutable WordTree with the same structure as this one.
+	 * @return a new WordTree, with no parent
+	 */
+	public WordTree<T> toWordTree() {
+		if(isLeaf())
+			return new WordTree<T>(type, word);
+		WordTree<T> tree = new WordTree<T>(type);
+		for(PersistentWordTree<T> child : children)
+			tree.addChild(child.toWordTree());
+		return tree;
+	}
+
+	/**
+	 * Get the identifying "type" object of the tree
+	 * @return the tree's type, of type T
+	 */
+	@Override
+	public T getType() {
+		return type;
+	}
+
+	/**
+	 * Check if the tree is a leaf.
+	 * @return true if the tree is a leaf
+	 */
+	@Override
+	public boolean isLeaf() {
+		return children == null;
+	}
+
+	/**
+	 * Get the word, if this is a leaf.
+	 * @return the leaf's word, or null if this is a tree
+	 */
+	@Override
+	public String getWord() {
+		return word;
+	}
+
+	/**
+	 * Get the SymbolTable id of the word, if this is a leaf.
+	 * @return the id of the leaf's word, or SymbolTable.NONE if this is a tree
+	 * or the word isn't in the SymbolTable
+	 */
+	@Override
+	public int getWordId() {
+		return wordId;
+	}
+
+	/**
+	 * Get the children of the tree.
+	 * @return an unmodifiable list of children, empty if this is a leaf
+	 */
+	@Override
+	public List<PersistentWordTree<T>> getChildren() {
+		return childList;
+	}
+
+	/**
+	 * Get the number of children this tree has.
+	 * @return the number of children, 0 if this is a leaf
+	 */
+	@Override
+	public int numChildren() {
+		return childList.size();
+	}
+
+	/**
+	 * Get the child at the specific index.
+	 * @param i the index of the child
+	 * @return the child at that index
+	 */
+	@Override
+	public PersistentWordTree<T> getChild(int i) {
+		return children[i];
+	}
+
+	/**
+	 * Get the first direct child of this tree with the specified type.
+	 * @param type the type to search for
+	 * @return the first child with that type, or null if there isn't one
+	 */
+	@Override
+	public PersistentWordTree<T> getType(T type) {
+		int i = getTypeIndex(type);
+		if(i == -1)
+			return null;
+		return children[i];
+	}
+
+	/**
+	 * Get the index of the first direct child of this tree with the
+	 * specified type.
+	 * @param type the type to search for
+	 * @return the index of the first child with that type, or -1 if there
+	 * isn't one
+	 */
+	public int getTypeIndex(T type) {
+		for(int i = 0; i < childList.size(); i++)
+			if(children[i].type.equals(type))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Get all direct children of this tree with the specified type.
+	 * @param type the type to search for
+	 * @return a new list of the children with that type, in order
+	 */
+	@Override
+	public List<PersistentWordTree<T>> getAllType(T type) {
+		List<PersistentWordTree<T>> all = new ArrayList<>();
+		for(PersistentWordTree<T> child : childList)
+			if(child.type.equals(type))
+				all.add(child);
+		return all;
+	}
+
+	/**
+	 * Check if one of the tree's direct children is a leaf with the specified
+	 * type and word.
+	 * @param type the type to search for
+	 * @param word the word to search for
+	 * @return true if there is a child like that
+	 */
+	public boolean hasLeaf(T type, String word) {
+		int id = SymbolTable.lookup(word);
+		for(PersistentWordTree<T> child : childList)
+			if(child.children == null && child.type.equals(type)
+					&& WordTree.sameWord(child.wordId, child.word, id, word))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Check if one of the tree's direct children has the specified type.
+	 * @param type the type to search for
+	 * @return true if a direct child has this type
+	 */
+	@Override
+	public boolean hasType(T type) {
+		return getType(type) != null;
+	}
+
+	/**
+	 * Get a tree like this one, with another child added to the end.
+	 * Behavior is undefined if this is a leaf.
+	 * @param child the new child
+	 * @return a new tree, sharing all of this tree's children
+	 */
+	public PersistentWordTree<T> addChild(PersistentWordTree<T> child) {
+		PersistentWordTree<T>[] newChildren =
+				Arrays.copyOf(children, children.length + 1);
+		newChildren[children.length] = child;
+		return new PersistentWordTree<T>(type, null, newChildren);
+	}
+
+	/**
+	 * Get a tree like this one, with other children added to the end.
+	 * Behavior is undefined if this is a leaf.
+	 * @param newChildren the new children, in order
+	 * @return a new tree, sharing all of this tree's children and the new
+	 * ones
+	 */
+	public PersistentWordTree<T> addChildren(
+			List<PersistentWordTree<T>> newChildren) {
+		PersistentWordTree<T>[] allChildren =
+				Arrays.copyOf(children, children.length + newChildren.size());
+		for(int i = 0; i < newChildren.size(); i++)
+			allChildren[children.length + i] = newChildren.get(i);
+		return new PersistentWordTree<T>(type, null, allChildren);
+	}
+
+	/**
+	 * Get a tree like this one, with the child at an index replaced.
+	 * @param i the index of the child to replace
+	 * @param child the new child
+	 * @return a new tree, sharing all of this tree's other children
+	 */
+	public PersistentWordTree<T> setChild(int i, PersistentWordTree<T> child) {
+		PersistentWordTree<T>[] newChildren = children.clone();
+		newChildren[i] = child;
+		return new PersistentWordTree<T>(type, null, newChildren);
+	}
+
+	/**
+	 * Get a tree like this one, without the child at an index.
+	 * @param i the index of the child to remove
+	 * @return a new tree, sharing all of this tree's other children
+	 */
+	public PersistentWordTree<T> removeChild(int i) {
+		PersistentWordTree<T>[] newChildren = newArray(children.length - 1);
+		System.arraycopy(children, 0, newChildren, 0, i);
+		System.arraycopy(children, i + 1, newChildren, i,
+				children.length - i - 1);
+		return new PersistentWordTree<T>(type, null, newChildren);
+	}
+
+	/**
+	 * Get a tree like this one, with the subtree at a path replaced. Only the
+	 * nodes along the path are copied.
+	 * @param path the index of the child at each level, starting at this tree.
+	 * An empty path means this tree.
+	 * @param subtree the new subtree
+	 * @return a new root
+	 */
+	public PersistentWordTree<T> replace(int[] path,
+			PersistentWordTree<T> subtree) {
+		return replace(path, 0, subtree);
+	}
+
+	private PersistentWordTree<T> replace(int[] path, int depth,
+			PersistentWordTree<T> subtree) {
+		if(depth == path.length)
+			return subtree;
+		int i = path[depth];
+		return setChild(i, children[i].replace(path, depth + 1, subtree));
+	}
+
+	@Override
+	public String toString() {
+		return toWordTree().toString();
+	}
+}
@@ -2,103 +2,205 @@ package betsy.grammar;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.io.PrintStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import static betsy.grammar.StructureTag.*;
 import static betsy.grammar.StructureTag.CategoryTag.*;
+import betsy.log.Log;
 import betsy.vocab.Vocab;
 
 /**
  * An implementation of a SentenceConstructor. Interprets the tree recursively,
  * with rules for each StructureTag for constructing the phrase.
+ * Sentences are remembered for each tree, and reused until the tree's version
+ * changes, so rendering the same tree again costs almost nothing.
+ * WordTrees and PersistentWordTrees are both read through WordTreeView, so
+ * neither has to be converted to the other first.
  * @author jacob
  *
  */
 public class RecursiveSentenceConstructor implements SentenceConstructor {
 	
-	private PrintStream logOut;
+	// no words have been added to the phrase yet
+	private static final int NO_WORD = -1;
+	
+	// PersistentWordTrees never change, so they always have this version
+	private static final int PERSISTENT_VERSION = 0;
+	
+	private Log log;
 	private boolean addPunctuation;
+	// reused for every sentence
+	private final StringBuilder builder = new StringBuilder();
+	
+	// the cache is cleared when it gets bigger than this
+	private static final int MAX_CACHED_TREES = 256;
+	
+	/**
+	 * A tree's sentence, with and without punctuation, at a certain version.
+	 */
+	private static class Rendering {
+		final int version;
+		String plain = null;
+		String punctuated = null;
+		
+		Rendering(int version) {
+			this.version = version;
+		}
+	}
+	
+	// keyed by identity, since trees with the same words are still different
+	// trees with their own versions. Holds WordTrees and PersistentWordTrees.
+	private final Map<Object, Rendering> cache = new IdentityHashMap<>();
 	
-	public RecursiveSentenceConstructor(PrintStream logOut) {
-		this.logOut = logOut;
+	public RecursiveSentenceConstructor(Log log) {
+		this.log = log;
 	}
 	
 	@Override
 	public String constructSentence(WordTree<StructureTag> tree,
 			boolean addPunctuation) {
+		WordTree<StructureTag> parent = tree.getParent();
+		boolean isSubject = parent != null && parent.getType() == SUBJECT;
+		return constructSentence(tree, tree.getVersion(), isSubject,
+				addPunctuation);
+	}
+	
+	/**
+	 * Create a phrase or sentence from a PersistentWordTree, without making a
+	 * WordTree out of it. The tree has no parent, so a noun phrase at the
+	 * root is never treated as a subject.
+	 */
+	@Override
+	public String constructSentence(PersistentWordTree<StructureTag> tree,
+			boolean addPunctuation) {
+		return constructSentence(tree, PERSISTENT_VERSION, false,
+				addPunctuation);
+	}
+	
+	private String constructSentence(WordTreeView<StructureTag, ?> tree,
+			int version, boolean isSubject, boolean addPunctuation) {
+		Rendering rendering = cache.get(tree);
+		if(rendering == null || rendering.version != version) {
+			if(cache.size() >= MAX_CACHED_TREES)
+				cache.clear();
+			rendering = new Rendering(version);
+			cache.put(tree, rendering);
+		}
+		
+		if(addPunctuation) {
+			if(rendering.punctuated == null)
+				rendering.punctuated = render(tree, isSubject, true);
+			return rendering.punctuated;
+		} else {
+			if(rendering.plain == null)
+				rendering.plain = render(tree, isSubject, false);
+			return rendering.plain;
+		}
+	}
+	
+	private String render(WordTreeView<StructureTag, ?> tree,
+			boolean isSubject, boolean addPunctuation) {
 		this.addPunctuation = addPunctuation;
-		String sentence = construct(tree);
-		if(sentence.isEmpty())
+		StringBuilder sentence = builder;
+		sentence.setLength(0);
+		construct(tree, sentence, isSubject);
+		if(sentence.length() == 0)
 			return "";
 		
 		if(addPunctuation) {
 			// capitalize first letter
-			sentence = Character.toUpperCase(sentence.charAt(0))
-					+ sentence.substring(1);
+			sentence.setCharAt(0, Character.toUpperCase(sentence.charAt(0)));
 			// add period if there isn't already a ?
 			if(sentence.charAt(sentence.length() - 1) != '?')
-				sentence += ".";
+				sentence.append('.');
 		}
-		return sentence;
+		return sentence.toString();
+	}
+	
+	private void construct(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
+		construct(tree, sb, false);
 	}
 	
-	private String construct(WordTree<StructureTag> tree) {
+	// isSubject: the tree is the child of a SUBJECT. PersistentWordTrees
+	// don't know their parents, so this is passed down instead.
+	private void construct(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb, boolean isSubject) {
 		if(tree.getType().isA(WORD)) {
-			return tree.getWord();
+			sb.append(tree.getWord());
+			return;
 		}
 		if(!tree.isLeaf() && tree.numChildren() == 0)
-			return "";
+			return;
 		if(tree.getType().isA(IGNORED)) {
-			return "";
+			return;
 		}
 		if(tree.getType().equals(POSSESSOR)) {
-			return Vocab.makePossessive(construct(tree.getChild(0)));
+			int start = sb.length();
+			construct(tree.getChild(0), sb);
+			String possessor = sb.substring(start);
+			sb.setLength(start);
+			sb.append(Vocab.makePossessive(possessor));
+			return;
 		}
 		if(tree.getType().isA(SINGLE_CHILD)) {
-			return construct(tree.getChild(0));
+			construct(tree.getChild(0), sb, tree.getType() == SUBJECT);
+			return;
 		}
 		
 		
 		switch(tree.getType()) {
 		case CONJUNCTION_PHRASE:
-			return constructConjunctionPhrase(tree);
+			constructConjunctionPhrase(tree, sb);
+			break;
 		case STATEMENT:
-			return constructStatement(tree);
+			constructStatement(tree, sb);
+			break;
 		case QUESTION:
-			return constructQuestion(tree);
+			constructQuestion(tree, sb);
+			break;
 		case YES_NO:
-			String statement = constructStatement(tree);
+			constructStatement(tree, sb);
 			if(addPunctuation)
-				statement += "?";
-			return statement; //TODO: YES_NO!
+				sb.append('?');
+			break; //TODO: YES_NO!
 		// INTERJECTION_PHRASE: fallback
 		case NOUN_PHRASE:
-			return constructNounPhrase(tree);
+			constructNounPhrase(tree, sb, isSubject);
+			break;
 		case VERB_PHRASE:
-			return constructVerbPhrase(tree);
+			constructVerbPhrase(tree, sb);
+			break;
 		case ADJECTIVE_PHRASE:
-			return constructAdjectivePhrase(tree);
+			constructAdjectivePhrase(tree, sb);
+			break;
 		case ADVERB_PHRASE:
-			return constructAdverbPhrase(tree);
+			constructAdverbPhrase(tree, sb);
+			break;
 		case PREPOSITION_PHRASE:
-			return constructPrepositionPhrase(tree);
+			constructPrepositionPhrase(tree, sb);
+			break;
 		case SUBORDINATING_CONJUNCTION_PHRASE:
-			return constructSubordinatingConjunctionPhrase(tree);
+			constructSubordinatingConjunctionPhrase(tree, sb);
+			break;
 		case PARTICLE_PHRASE:
-			return constructParticlePhrase(tree);
+			constructParticlePhrase(tree, sb);
+			break;
 		default:
-			return constructFallback(tree);
+			constructFallback(tree, sb);
 		}
 	}
 	
-	private String constructConjunctionPhrase(WordTree<StructureTag> tree) {
-		List<String> conjunctions = new ArrayList<>();
-		List<String> phrases = new ArrayList<>();
+	private void constructConjunctionPhrase(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
+		List<WordTreeView<StructureTag, ?>> conjunctions = new ArrayList<>();
+		List<WordTreeView<StructureTag, ?>> phrases = new ArrayList<>();
 		
-		for(WordTree<StructureTag> child : tree.getChildren())
+		for(WordTreeView<StructureTag, ?> child : tree.getChildren())
 			if(child.getType().equals(CONJUNCTION))
-				conjunctions.add(construct(child));
-			else 
-				phrases.add(construct(child));
+				conjunctions.add(child);
+			else
+				phrases.add(child);
 		
 		int numConjunctions = conjunctions.size();
 		int numPhrases = phrases.size();
@@ -106,104 +208,78 @@ public class RecursiveSentenceConstructor implements SentenceConstructor {
 				numConjunctions : numPhrases;
 		
 		//interleave phrases and conjunctions
-		List<String> wordList = new ArrayList<>();
+		int word = NO_WORD;
 		for(int i = 0; i < maxNum; i++) {
 			if(i < numPhrases)
-				wordList.add(phrases.get(i));
+				word = appendWord(phrases.get(i), sb, word);
 			if(i < numConjunctions)
-				wordList.add(conjunctions.get(i));
+				word = appendWord(conjunctions.get(i), sb, word);
 		}
-		return wordList(wordList);
 	}
 	
-	private String constructStatement(WordTree<StructureTag> tree) {
-		List<String> wordList = new ArrayList<>();
+	private void constructStatement(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
+		int word = NO_WORD;
 		if(tree.hasType(SUBJECT))
-			wordList.add(construct(tree.getType(SUBJECT)));
+			word = appendWord(tree.getType(SUBJECT), sb, word);
 		if(tree.hasType(ACTION))
-			wordList.add(construct(tree.getType(ACTION)));
-		return wordList(wordList);
+			word = appendWord(tree.getType(ACTION), sb, word);
 	}
 	
-	private String constructQuestion(WordTree<StructureTag> tree) {
-		List<String> wordList = new ArrayList<>();
+	private void constructQuestion(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
+		int word = NO_WORD;
 		if(tree.hasType(QUESTION_TYPE))
-			wordList.add(construct(tree.getType(QUESTION_TYPE)));
+			word = appendWord(tree.getType(QUESTION_TYPE), sb, word);
 //		if(tree.hasType(AUXILIARY_VERB))
-//			wordList.add(construct(tree.getType(AUXILIARY_VERB)));
+//			word = appendWord(tree.getType(AUXILIARY_VERB), sb, word);
 		if(tree.hasType(SUBJECT))
-			wordList.add(construct(tree.getType(SUBJECT)));
+			word = appendWord(tree.getType(SUBJECT), sb, word);
 		if(tree.hasType(ACTION))
-			wordList.add(construct(tree.getType(ACTION)));
-		String response = wordList(wordList);
+			word = appendWord(tree.getType(ACTION), sb, word);
 		if(addPunctuation)
-			response += "?";
-		return response;
+			sb.append('?');
 	}
 	
-	private String constructNounPhrase(WordTree<StructureTag> tree) {
-		List<WordTree<StructureTag>> nouns = tree.getAllType(NOUN);
-		nouns.addAll(tree.getAllType(PRONOUN));
-		nouns.addAll(tree.getAllType(QUESTION_PRONOUN));
-		nouns.addAll(tree.getAllType(REFERRING_PRONOUN));
-		List<WordTree<StructureTag>> adjectivePhrases =
-				tree.getAllType(ADJECTIVE_PHRASE);
-		List<WordTree<StructureTag>> determiners =
-				tree.getAllType(DETERMINER);
-		determiners.addAll(tree.getAllType(QUESTION_DETERMINER));
-		List<WordTree<StructureTag>> possessors =
-				tree.getAllType(POSSESSOR);
-		List<WordTree<StructureTag>> prepositionPhrases =
-				tree.getAllType(PREPOSITION_PHRASE);
-		List<WordTree<StructureTag>> subordinatingConjunctionPhrases =
-				tree.getAllType(SUBORDINATING_CONJUNCTION_PHRASE);
+	private void constructNounPhrase(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb, boolean isSubject) {
 		boolean isPlural = tree.hasType(PLURAL);
 		
-		boolean isSubject = false;
-		if(tree.getParent() != null)
-			isSubject = tree.getParent().getType().equals(SUBJECT);
+		int word = NO_WORD;
 		
-		List<String> wordList = new ArrayList<>();
-		
-		for(WordTree<StructureTag> t : determiners)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : possessors)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : adjectivePhrases)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : nouns) {
+		word = appendWords(tree.getAllType(DETERMINER), sb, word);
+		word = appendWords(tree.getAllType(QUESTION_DETERMINER), sb, word);
+		word = appendWords(tree.getAllType(POSSESSOR), sb, word);
+		word = appendWords(tree.getAllType(ADJECTIVE_PHRASE), sb, word);
+		word = appendNouns(tree.getAllType(NOUN), isSubject, isPlural, sb,
+				word);
+		word = appendNouns(tree.getAllType(PRONOUN), isSubject, isPlural, sb,
+				word);
+		word = appendNouns(tree.getAllType(QUESTION_PRONOUN), isSubject,
+				isPlural, sb, word);
+		word = appendNouns(tree.getAllType(REFERRING_PRONOUN), isSubject,
+				isPlural, sb, word);
+		word = appendWords(tree.getAllType(PREPOSITION_PHRASE), sb, word);
+		word = appendWords(tree.getAllType(SUBORDINATING_CONJUNCTION_PHRASE),
+				sb, word);
+	}
+	
+	private int appendNouns(List<? extends WordTreeView<StructureTag, ?>> nouns,
+			boolean isSubject, boolean isPlural, StringBuilder sb,
+			int previousWord) {
+		for(WordTreeView<StructureTag, ?> t : nouns) {
 			String noun = t.getWord();
 			if(isSubject)
 				noun = Vocab.makePronounSubject(noun);
 			if(isPlural)
 				noun = Vocab.makePlural(noun);
-			wordList.add(noun);
+			previousWord = appendWord(noun, sb, previousWord);
 		}
-		for(WordTree<StructureTag> t : prepositionPhrases)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : subordinatingConjunctionPhrases)
-			wordList.add(construct(t));
-		
-		return wordList(wordList);
+		return previousWord;
 	}
 	
-	private String constructVerbPhrase(WordTree<StructureTag> tree) {
-		List<WordTree<StructureTag>> verbs = tree.getAllType(VERB);
-		List<WordTree<StructureTag>> adverbPhrases =
-				tree.getAllType(ADVERB_PHRASE);
-		List<WordTree<StructureTag>> objects =
-				tree.getAllType(OBJECT);
-		List<WordTree<StructureTag>> indirectObjects =
-				tree.getAllType(INDIRECT_OBJECT);
-		List<WordTree<StructureTag>> prepositionPhrases =
-				tree.getAllType(PREPOSITION_PHRASE);
-		List<WordTree<StructureTag>> subordinatingConjunctionPhrases =
-				tree.getAllType(SUBORDINATING_CONJUNCTION_PHRASE);
-		List<WordTree<StructureTag>> particlePhrases =
-				tree.getAllType(PARTICLE_PHRASE);
-		List<WordTree<StructureTag>> questionAdverbs =
-				tree.getAllType(QUESTION_ADVERB);
-		
+	private void constructVerbPhrase(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
 		String tenseTime = null;
 		String tenseFrame = null;
 		if(tree.hasType(TENSE_TIME))
@@ -211,155 +287,124 @@ public class RecursiveSentenceConstructor implements SentenceConstructor {
 		if(tree.hasType(TENSE_FRAME))
 			tenseFrame = tree.getType(TENSE_FRAME).getWord();
 		
-		List<String> wordList = new ArrayList<>();
+		int word = NO_WORD;
 		
-		for(WordTree<StructureTag> t : adverbPhrases)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : verbs)
-			wordList.add(Vocab.conjugateVerb(t.getWord(),
-					tenseTime, tenseFrame));
-		for(WordTree<StructureTag> t : indirectObjects)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : objects)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : particlePhrases)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : prepositionPhrases)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : subordinatingConjunctionPhrases)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : questionAdverbs)
-			wordList.add(construct(t));
-		
-		return wordList(wordList);
+		word = appendWords(tree.getAllType(ADVERB_PHRASE), sb, word);
+		for(WordTreeView<StructureTag, ?> t : tree.getAllType(VERB))
+			word = appendWord(Vocab.conjugateVerb(t.getWord(),
+					tenseTime, tenseFrame), sb, word);
+		word = appendWords(tree.getAllType(INDIRECT_OBJECT), sb, word);
+		word = appendWords(tree.getAllType(OBJECT), sb, word);
+		word = appendWords(tree.getAllType(PARTICLE_PHRASE), sb, word);
+		word = appendWords(tree.getAllType(PREPOSITION_PHRASE), sb, word);
+		word = appendWords(tree.getAllType(SUBORDINATING_CONJUNCTION_PHRASE),
+				sb, word);
+		word = appendWords(tree.getAllType(QUESTION_ADVERB), sb, word);
 	}
 	
-	private String constructAdjectivePhrase(WordTree<StructureTag> tree) {
-		List<WordTree<StructureTag>> adjectives = tree.getAllType(ADJECTIVE);
-		List<WordTree<StructureTag>> adverbPhrases =
-				tree.getAllType(ADVERB_PHRASE);
-		List<WordTree<StructureTag>> prepositionPhrases =
-				tree.getAllType(PREPOSITION_PHRASE);
-		
-		boolean isComparative = tree.hasType(COMPARATIVE);
-		boolean isSuperlative = tree.hasType(SUPERLATIVE);
-		
-		List<String> wordList = new ArrayList<>();
-		
-		for(WordTree<StructureTag> t : adverbPhrases)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : adjectives)
-			if(isSuperlative)
-				wordList.add(Vocab.makeSuperlative(t.getWord()));
-			else if(isComparative)
-				wordList.add(Vocab.makeComparative(t.getWord()));
-			else
-				wordList.add(t.getWord());
-		for(WordTree<StructureTag> t : prepositionPhrases)
-			wordList.add(construct(t));
+	private void constructAdjectivePhrase(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
+		int word = NO_WORD;
 		
-		return wordList(wordList);
+		word = appendWords(tree.getAllType(ADVERB_PHRASE), sb, word);
+		word = appendModified(tree, tree.getAllType(ADJECTIVE), sb, word);
+		word = appendWords(tree.getAllType(PREPOSITION_PHRASE), sb, word);
 	}
 	
-	private String constructAdverbPhrase(WordTree<StructureTag> tree) {
-		List<WordTree<StructureTag>> adverbs = tree.getAllType(ADVERB);
-		List<WordTree<StructureTag>> adverbPhrases =
-				tree.getAllType(ADVERB_PHRASE);
-		List<WordTree<StructureTag>> prepositionPhrases =
-				tree.getAllType(PREPOSITION_PHRASE);
-		
-		boolean isComparative = tree.hasType(COMPARATIVE);
-		boolean isSuperlative = tree.hasType(SUPERLATIVE);
+	private void constructAdverbPhrase(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
+		int word = NO_WORD;
 		
-		List<String> wordList = new ArrayList<>();
+		word = appendWords(tree.getAllType(ADVERB_PHRASE), sb, word);
+		word = appendModified(tree, tree.getAllType(ADVERB), sb, word);
+		word = appendWords(tree.getAllType(PREPOSITION_PHRASE), sb, word);
+	}
+	
+	// adjectives or adverbs, made comparative or superlative if the phrase is
+	private int appendModified(WordTreeView<StructureTag, ?> phrase,
+			List<? extends WordTreeView<StructureTag, ?>> words,
+			StringBuilder sb, int previousWord) {
+		boolean isComparative = phrase.hasType(COMPARATIVE);
+		boolean isSuperlative = phrase.hasType(SUPERLATIVE);
 		
-		for(WordTree<StructureTag> t : adverbPhrases)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : adverbs)
+		for(WordTreeView<StructureTag, ?> t : words)
 			if(isSuperlative)
-				wordList.add(Vocab.makeSuperlative(t.getWord()));
+				previousWord = appendWord(Vocab.makeSuperlative(t.getWord()),
+						sb, previousWord);
 			else if(isComparative)
-				wordList.add(Vocab.makeComparative(t.getWord()));
+				previousWord = appendWord(Vocab.makeComparative(t.getWord()),
+						sb, previousWord);
 			else
-				wordList.add(t.getWord());
-		for(WordTree<StructureTag> t : prepositionPhrases)
-			wordList.add(construct(t));
-		
-		return wordList(wordList);
+				previousWord = appendWord(t.getWord(), sb, previousWord);
+		return previousWord;
 	}
 	
-	private String constructPrepositionPhrase(WordTree<StructureTag> tree) {
-		List<WordTree<StructureTag>> prepositions =
-				tree.getAllType(PREPOSITION);
-		List<WordTree<StructureTag>> objects =
-				tree.getAllType(OBJECT);
-		
-		List<String> wordList = new ArrayList<>();
-		
-		for(WordTree<StructureTag> t : prepositions)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : objects)
-			wordList.add(construct(t));
-		
-		return wordList(wordList);
+	private void constructPrepositionPhrase(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
+		int word = NO_WORD;
+		word = appendWords(tree.getAllType(PREPOSITION), sb, word);
+		word = appendWords(tree.getAllType(OBJECT), sb, word);
 	}
 	
-	private String constructSubordinatingConjunctionPhrase(
-			WordTree<StructureTag> tree) {
-		List<WordTree<StructureTag>> conjunctions =
-				tree.getAllType(CONJUNCTION);
-		List<WordTree<StructureTag>> statements =
-				tree.getAllType(STATEMENT);
-		
-		List<String> wordList = new ArrayList<>();
-		
-		for(WordTree<StructureTag> t : conjunctions)
-			wordList.add(construct(t));
-		for(WordTree<StructureTag> t : statements)
-			wordList.add(construct(t));
-		
-		return wordList(wordList);
+	private void constructSubordinatingConjunctionPhrase(
+			WordTreeView<StructureTag, ?> tree, StringBuilder sb) {
+		int word = NO_WORD;
+		word = appendWords(tree.getAllType(CONJUNCTION), sb, word);
+		word = appendWords(tree.getAllType(STATEMENT), sb, word);
 	}
 	
-	private String constructParticlePhrase(WordTree<StructureTag> tree) {
-		List<WordTree<StructureTag>> particles =
-				tree.getAllType(PARTICLE);
-		
-		List<String> wordList = new ArrayList<>();
-		
-		for(WordTree<StructureTag> t : particles)
-			wordList.add(construct(t));
-		
-		return wordList(wordList);
+	private void constructParticlePhrase(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
+		appendWords(tree.getAllType(PARTICLE), sb, NO_WORD);
 	}
 	
 	//fallback for trees with no matches found
-	private String constructFallback(WordTree<StructureTag> tree) {
+	private void constructFallback(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb) {
 		error("Fallback for tag " + tree.getType());
 		if(tree.isLeaf()) {
-			return tree.getWord();
+			sb.append(tree.getWord());
 		} else {
-			List<String> strList = new ArrayList<>();
-			for(WordTree<StructureTag> child : tree.getChildren()) {
-				strList.add(construct(child));
-			}
-			return wordList(strList);
+			appendWords(tree.getChildren(), sb, NO_WORD);
 		}
 	}
 	
-	private String wordList(List<String> words) {
-		StringBuilder sb = new StringBuilder();
-		for(int i = 0; i < words.size(); i++) {
-			String s = words.get(i);
-			sb.append(s);
-			if(i != words.size() - 1 && !s.isEmpty())
-				sb.append(" ");
-		}
-		return sb.toString();
+	/*
+	 * Phrases are lists of words separated by spaces. Each word is appended
+	 * straight to the sentence, and the position where the previous word
+	 * started is passed along, so a space can be put between two words only if
+	 * the first one wasn't empty. Each of these methods returns the position
+	 * where the word it appended started.
+	 */
+	
+	private int startWord(StringBuilder sb, int previousWord) {
+		if(previousWord != NO_WORD && sb.length() > previousWord)
+			sb.append(' ');
+		return sb.length();
+	}
+	
+	private int appendWord(String s, StringBuilder sb, int previousWord) {
+		int word = startWord(sb, previousWord);
+		sb.append(s);
+		return word;
+	}
+	
+	private int appendWord(WordTreeView<StructureTag, ?> tree,
+			StringBuilder sb, int previousWord) {
+		int word = startWord(sb, previousWord);
+		construct(tree, sb);
+		return word;
+	}
+	
+	private int appendWords(List<? extends WordTreeView<StructureTag, ?>> trees,
+			StringBuilder sb, int previousWord) {
+		for(WordTreeView<StructureTag, ?> t : trees)
+			previousWord = appendWord(t, sb, previousWord);
+		return previousWord;
 	}
 	
 	private void error(String text) {
-		logOut.println("WARNING: " + text);
+		log.warn(text);
 	}
-
+	
 }
@@ -1,6 +1,5 @@
 package betsy.grammar;
 
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,6 +9,7 @@ import betsy.grammar.Tag.WordType;
 import betsy.grammar.Tag.StructuralType;
 import betsy.vocab.*;
 import betsy.vocab.VerbInfo.VerbType;
+import betsy.log.Log;
 
 /**
  * An implementation of SentenceStructureParser. It's recursive, as suggested
@@ -19,13 +19,13 @@ import betsy.vocab.VerbInfo.VerbType;
  */
 public class RecursiveStructureParser implements SentenceStructureParser {
 	
-	private PrintStream logOut;
+	private Log log;
 	
 	private WordTree<StructureTag> structureTree;
 	private int depth;
 	
-	public RecursiveStructureParser(PrintStream logOut) {
-		this.logOut = logOut;
+	public RecursiveStructureParser(Log log) {
+		this.log = log;
 	}
 	
 	private static boolean isIgnoredTag(Tag t) {
@@ -897,7 +897,7 @@ public class RecursiveStructureParser implements SentenceStructureParser {
 	}
 	
 	private void error(String text) {
-		logOut.println("WARNING: " + text);
+		log.warn(text);
 	}
 	
 	private void unknownTagError(Object tag) {
@@ -931,7 +931,7 @@ public class RecursiveStructureParser implements SentenceStructureParser {
 	}
 	
 	private void addChild(StructureTag childTag, WordTree<Tag> leafTree) {
-		logOut.println("WARNING: Compressing tag tree!");
+		log.warn("Compressing tag tree!");
 		structureTree = structureTree.addChild(
 				new WordTree<>(childTag, leafTree.wordListToString()));
 		depth++;
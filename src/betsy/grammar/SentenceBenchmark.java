@@ -0,0 +1,156 @@
+package betsy.grammar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static betsy.grammar.StructureTag.*;
+import static betsy.grammar.StructureTag.CategoryTag.*;
+import betsy.log.Log;
+import betsy.vocab.Vocab;
+
+/**
+ * Times RecursiveSentenceConstructor. The trees are random statements like
+ * "the old dog had quickly run to the big park", enough of them that the
+ * constructor's cache never hits, so it is doing the full work. It is also
+ * timed rendering the same few trees over and over, when every sentence comes
+ * from the cache. A hash of every sentence is printed, so a run against an
+ * older version of the constructor can be checked to give the same sentences.
+ * <p>
+ * Usage: <code>SentenceBenchmark [trees [rounds]]</code>
+ * <br>Defaults are 1024 trees and 200 rounds.
+ * @author jacob
+ *
+ */
+public class SentenceBenchmark {
+
+	private static final String[] DETERMINERS = { "the", "my" };
+	private static final String[] ADJECTIVES = { "big", "old", "red", "happy" };
+	private static final String[] NOUNS = { "dog", "park", "house", "friend",
+		"teacher", "apple" };
+	private static final String[] VERBS = { "run", "see", "like", "walk",
+		"eat", "be" };
+	private static final String[] ADVERBS = { "quickly", "often", "never" };
+	private static final String[] PREPOSITIONS = { "to", "in", "with" };
+	private static final String[] TIMES = { "PAST", "PRESENT", "FUTURE" };
+	private static final String[] FRAMES = { "SIMPLE", "PERFECT",
+		"CONTINUOUS" };
+
+	public static void main(String[] args) {
+		int numTrees = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		Vocab.init();
+		Random random = new Random(1);
+		List<WordTree<StructureTag>> trees = new ArrayList<>(numTrees);
+		for(int i = 0; i < numTrees; i++)
+			trees.add(statement(random));
+
+		SentenceConstructor constructor =
+				new RecursiveSentenceConstructor(Log.SILENT);
+		int hash = 1;
+		for(WordTree<StructureTag> tree : trees)
+			hash = 31 * hash + constructor.constructSentence(tree, true)
+					.hashCode();
+		System.out.println("Example: "
+				+ constructor.constructSentence(trees.get(0), true));
+		System.out.format("Hash of all sentences: %08x%n", hash);
+
+		// warm up, then time
+		for(int i = 0; i < 2; i++) {
+			time(constructor, trees, rounds);
+			time(constructor, trees.subList(0, 16), rounds * numTrees / 16);
+		}
+		long renders = (long)numTrees * rounds;
+		report("Uncached:", renders, time(constructor, trees, rounds));
+		report("Cached:", renders, time(constructor, trees.subList(0, 16),
+				rounds * numTrees / 16));
+	}
+
+	// returns nanoseconds
+	private static long time(SentenceConstructor constructor,
+			List<WordTree<StructureTag>> trees, int rounds) {
+		long start = System.nanoTime();
+		int length = 0;
+		for(int i = 0; i < rounds; i++)
+			for(WordTree<StructureTag> tree : trees)
+				length += constructor.constructSentence(tree, i % 2 == 0)
+						.length();
+		long time = System.nanoTime() - start;
+		// so the work can't be optimized away
+		if(length == 42)
+			System.out.print("");
+		return time;
+	}
+
+	private static void report(String name, long renders, long nanos) {
+		System.out.format("%-22s %8.0f sentences/sec, %6.0f ns/sentence%n",
+				name, renders / (nanos / 1e9), (double)nanos / renders);
+	}
+
+	// also used by TraversalBenchmark and WordTreeCodecBenchmark
+	static WordTree<StructureTag> statement(Random random) {
+		WordTree<StructureTag> statement = new WordTree<>(STATEMENT);
+		WordTree<StructureTag> subject = new WordTree<>(SUBJECT);
+		subject.addChild(nounPhrase(random));
+		statement.addChild(subject);
+		WordTree<StructureTag> action = new WordTree<>(ACTION);
+		action.addChild(verbPhrase(random));
+		statement.addChild(action);
+		return statement;
+	}
+
+	private static WordTree<StructureTag> nounPhrase(Random random) {
+		WordTree<StructureTag> phrase = new WordTree<>(NOUN_PHRASE);
+		if(random.nextInt(4) == 0) {
+			WordTree<StructureTag> possessor = new WordTree<>(POSSESSOR);
+			WordTree<StructureTag> owner = new WordTree<>(NOUN_PHRASE);
+			owner.addChild(leaf(NOUN, NOUNS, random));
+			possessor.addChild(owner);
+			phrase.addChild(possessor);
+		} else {
+			phrase.addChild(leaf(DETERMINER, DETERMINERS, random));
+		}
+		if(random.nextBoolean()) {
+			WordTree<StructureTag> adjective =
+					new WordTree<>(ADJECTIVE_PHRASE);
+			adjective.addChild(leaf(ADJECTIVE, ADJECTIVES, random));
+			phrase.addChild(adjective);
+		}
+		phrase.addChild(leaf(NOUN, NOUNS, random));
+		if(random.nextInt(4) == 0)
+			phrase.addChild(new WordTree<>(PLURAL, ""));
+		return phrase;
+	}
+
+	private static WordTree<StructureTag> verbPhrase(Random random) {
+		WordTree<StructureTag> phrase = new WordTree<>(VERB_PHRASE);
+		phrase.addChild(leaf(TENSE_TIME, TIMES, random));
+		phrase.addChild(leaf(TENSE_FRAME, FRAMES, random));
+		if(random.nextBoolean()) {
+			WordTree<StructureTag> adverb = new WordTree<>(ADVERB_PHRASE);
+			adverb.addChild(leaf(ADVERB, ADVERBS, random));
+			phrase.addChild(adverb);
+		}
+		phrase.addChild(leaf(VERB, VERBS, random));
+		if(random.nextBoolean()) {
+			WordTree<StructureTag> object = new WordTree<>(OBJECT);
+			object.addChild(nounPhrase(random));
+			phrase.addChild(object);
+		}
+		if(random.nextBoolean()) {
+			WordTree<StructureTag> preposition =
+					new WordTree<>(PREPOSITION_PHRASE);
+			preposition.addChild(leaf(PREPOSITION, PREPOSITIONS, random));
+			WordTree<StructureTag> object = new WordTree<>(OBJECT);
+			object.addChild(nounPhrase(random));
+			preposition.addChild(object);
+			phrase.addChild(preposition);
+		}
+		return phrase;
+	}
+
+	private static WordTree<StructureTag> leaf(StructureTag tag,
+			String[] words, Random random) {
+		return new WordTree<>(tag, words[random.nextInt(words.length)]);
+	}
+}
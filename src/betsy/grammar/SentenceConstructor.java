@@ -17,4 +17,17 @@ public interface SentenceConstructor {
 	 */
 	public String constructSentence(WordTree<StructureTag> tree,
 			boolean addPunctuation);
+	
+	/**
+	 * Create a phrase or sentence from a PersistentWordTree. By default the
+	 * tree is copied into a WordTree first; implementations that can read a
+	 * PersistentWordTree directly should override this.
+	 * @param tree the tree of tags
+	 * @param addPunctuation see constructSentence(WordTree, boolean)
+	 * @return a phrase/sentence string created from the given tree
+	 */
+	public default String constructSentence(
+			PersistentWordTree<StructureTag> tree, boolean addPunctuation) {
+		return constructSentence(tree.toWordTree(), addPunctuation);
+	}
 }
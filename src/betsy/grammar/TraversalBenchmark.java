@@ -0,0 +1,151 @@
+package betsy.grammar;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static betsy.grammar.StructureTag.*;
+
+/**
+ * Counts how much is allocated finding the noun phrases in a tree by
+ * collecting them into a new list, as Context's old findNounPhrases() did,
+ * and by visiting them in place with visitPreOrder(). getAllLeaves() is
+ * compared with the version that concatenated a new list at every level. The
+ * old versions are copied here, including getChildren() wrapping the child
+ * list on every call. The trees are the random statements from
+ * SentenceBenchmark.
+ * Allocation is measured with the JVM's count of bytes allocated by the
+ * current thread, so it only works on JVMs that support that.
+ * <p>
+ * Usage: <code>TraversalBenchmark [trees [rounds]]</code>
+ * <br>Defaults are 1024 trees and 200 rounds.
+ * @author jacob
+ *
+ */
+public class TraversalBenchmark {
+
+	private static final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean)
+			ManagementFactory.getThreadMXBean();
+
+	private interface Traversal {
+		// returns something that depends on the whole traversal
+		int run(WordTree<StructureTag> tree);
+	}
+
+	public static void main(String[] args) {
+		int numTrees = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		if(!threads.isThreadAllocatedMemorySupported()) {
+			System.err.println("This JVM can't count allocated bytes.");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		Random random = new Random(1);
+		List<WordTree<StructureTag>> trees = new ArrayList<>(numTrees);
+		for(int i = 0; i < numTrees; i++)
+			trees.add(SentenceBenchmark.statement(random));
+
+		Traversal findNounPhrases = tree -> {
+			List<WordTree<StructureTag>> nounPhrases = new ArrayList<>();
+			findNounPhrases(tree, nounPhrases);
+			return nounPhrases.size();
+		};
+		CountingVisitor visitor = new CountingVisitor();
+		Traversal visitNounPhrases = tree -> {
+			visitor.count = 0;
+			tree.visitPreOrder(NOUN_PHRASE, visitor);
+			return visitor.count;
+		};
+		Traversal concatLeaves = tree -> concatLeaves(tree).size();
+		Traversal getAllLeaves = tree -> tree.getAllLeaves().size();
+
+		for(WordTree<StructureTag> tree : trees) {
+			if(findNounPhrases.run(tree) != visitNounPhrases.run(tree))
+				throw new AssertionError("Noun phrases differ in " + tree);
+			if(concatLeaves.run(tree) != getAllLeaves.run(tree))
+				throw new AssertionError("Leaves differ in " + tree);
+		}
+
+		// warm up, so the JIT has done what it will with each one
+		for(int i = 0; i < 5; i++) {
+			measure(findNounPhrases, trees, rounds);
+			measure(visitNounPhrases, trees, rounds);
+			measure(concatLeaves, trees, rounds);
+			measure(getAllLeaves, trees, rounds);
+		}
+		long walks = (long)numTrees * rounds;
+		report("findNounPhrases():", walks,
+				measure(findNounPhrases, trees, rounds));
+		report("visitPreOrder():", walks,
+				measure(visitNounPhrases, trees, rounds));
+		report("Concatenated leaves:", walks,
+				measure(concatLeaves, trees, rounds));
+		report("getAllLeaves():", walks,
+				measure(getAllLeaves, trees, rounds));
+	}
+
+	// returns { bytes allocated, nanoseconds }
+	private static long[] measure(Traversal traversal,
+			List<WordTree<StructureTag>> trees, int rounds) {
+		long id = Thread.currentThread().getId();
+		long bytes = threads.getThreadAllocatedBytes(id);
+		long start = System.nanoTime();
+		int sum = 0;
+		for(int i = 0; i < rounds; i++)
+			for(WordTree<StructureTag> tree : trees)
+				sum += traversal.run(tree);
+		long time = System.nanoTime() - start;
+		bytes = threads.getThreadAllocatedBytes(id) - bytes;
+		// so the work can't be optimized away
+		if(sum == 42)
+			System.out.print("");
+		return new long[] { bytes, time };
+	}
+
+	private static void report(String name, long walks, long[] result) {
+		System.out.format("%-22s %7.1f bytes/tree, %6.0f ns/tree%n",
+				name, (double)result[0] / walks, (double)result[1] / walks);
+	}
+
+	private static class CountingVisitor implements TreeVisitor<StructureTag> {
+		int count;
+
+		@Override
+		public boolean visit(WordTree<StructureTag> tree) {
+			count++;
+			return true;
+		}
+	}
+
+	// Context.findNounPhrases(), before the visitor replaced it
+	private static void findNounPhrases(WordTree<StructureTag> tree,
+			List<WordTree<StructureTag>> nounPhrases) {
+		if(tree.getType().equals(NOUN_PHRASE))
+			nounPhrases.add(tree);
+		for(WordTree<StructureTag> child : children(tree))
+			findNounPhrases(child, nounPhrases);
+	}
+
+	// WordTree.getAllLeaves(), before it filled a single list
+	private static List<WordTree<StructureTag>> concatLeaves(
+			WordTree<StructureTag> tree) {
+		List<WordTree<StructureTag>> leaves = new ArrayList<>();
+		if(tree.isLeaf()) {
+			leaves.add(tree);
+		} else {
+			for(WordTree<StructureTag> child : children(tree))
+				leaves.addAll(concatLeaves(child));
+		}
+		return leaves;
+	}
+
+	// getChildren() used to wrap the list every time it was called
+	private static List<WordTree<StructureTag>> children(
+			WordTree<StructureTag> tree) {
+		return Collections.unmodifiableList(tree.getChildren());
+	}
+}
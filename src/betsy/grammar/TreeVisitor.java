@@ -0,0 +1,18 @@
+package betsy.grammar;
+
+/**
+ * Something that is called for each node of a WordTree, by
+ * WordTree.visitPreOrder() or visitPostOrder().
+ * @author jacob
+ *
+ * @param <T> the type of object used to tag each tree or leaf
+ */
+@FunctionalInterface
+public interface TreeVisitor<T> {
+	/**
+	 * Visit a node of the tree.
+	 * @param tree the node
+	 * @return true to keep going, false to stop the traversal
+	 */
+	public boolean visit(WordTree<T> tree);
+}
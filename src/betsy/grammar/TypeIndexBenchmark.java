@@ -0,0 +1,244 @@
+package betsy.grammar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import betsy.log.Log;
+import betsy.memory.ScoredQuestionMemory;
+import betsy.vocab.Vocab;
+
+/**
+ * Times WordTree's lookups by type, which use an index of the children's
+ * types on trees with at least WordTree.INDEX_MIN_CHILDREN children, against
+ * searching the list of children the way they did before the index. Trees are
+ * made with different numbers of children of random types, and looked up with
+ * random types, about half of which aren't there. The first lookup on a tree
+ * has to build its index, so that case is timed too, on trees that are looked
+ * up once. Both ways must find the same child for every lookup.
+ * <p>
+ * Then the random statements from SentenceBenchmark, which are shaped like
+ * the parser's trees, are used the way Betsy uses them: new ones are rendered
+ * by RecursiveSentenceConstructor, and ScoredQuestionMemory stores them,
+ * warms them like BetsyEngine does its baseline, and answers questions from
+ * them. The number of children in their trees is counted too. To compare
+ * indexing every tree, change INDEX_MIN_CHILDREN and run this again.
+ * <p>
+ * Usage: <code>TypeIndexBenchmark [trees [rounds]]</code>
+ * <br>Defaults are 4096 trees and 200 rounds. The statements get a tenth as
+ * many rounds, since answering a question checks every stored statement.
+ * @author jacob
+ *
+ */
+public class TypeIndexBenchmark {
+
+	private static final int[] WIDTHS = { 1, 2, 3, 4, 8, 16 };
+	private static final int LOOKUPS = 8;
+	private static final int QUESTIONS = 8;
+
+	public static void main(String[] args) {
+		int numTrees = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		StructureTag[] tags = StructureTag.values();
+		Random random = new Random(1);
+		for(int width : WIDTHS) {
+			List<WordTree<StructureTag>> trees = new ArrayList<>(numTrees);
+			for(int i = 0; i < numTrees; i++)
+				trees.add(tree(random, tags, width));
+			// half from the first few types, so about half of them are there
+			StructureTag[] lookups = new StructureTag[LOOKUPS];
+			for(int i = 0; i < LOOKUPS; i++)
+				lookups[i] = tags[random.nextInt(i % 2 == 0
+						? width : tags.length)];
+
+			for(WordTree<StructureTag> tree : trees)
+				for(StructureTag type : lookups)
+					if(tree.getTypeIndex(type) != scanIndex(tree, type))
+						throw new AssertionError("Lookup of " + type
+								+ " disagrees in " + tree);
+
+			// warm up, then time
+			for(int i = 0; i < 2; i++) {
+				timeIndexed(trees, lookups, rounds);
+				timeScan(trees, lookups, rounds);
+				timeFirst(random, tags, width, numTrees, lookups[0]);
+			}
+			long count = (long)numTrees * rounds * LOOKUPS;
+			System.out.println(width + " children:");
+			report("getTypeIndex():", count,
+					timeIndexed(trees, lookups, rounds));
+			report("Search:", count, timeScan(trees, lookups, rounds));
+			report("First lookup:", numTrees,
+					timeFirst(random, tags, width, numTrees, lookups[0]));
+		}
+
+		statements(numTrees, rounds / 10);
+	}
+
+	private static void statements(int numTrees, int rounds) {
+		Vocab.init();
+		Random random = new Random(1);
+		List<WordTree<StructureTag>> trees = new ArrayList<>(numTrees);
+		for(int i = 0; i < numTrees; i++)
+			trees.add(SentenceBenchmark.statement(random));
+
+		// how many trees have each number of children, the last counting
+		// every tree that is indexed
+		int[] widths = new int[WordTree.INDEX_MIN_CHILDREN + 1];
+		for(WordTree<StructureTag> tree : trees)
+			tree.visitPreOrder(t -> {
+				if(!t.isLeaf())
+					widths[Math.min(t.numChildren(), widths.length - 1)]++;
+				return true;
+			});
+		int total = 0;
+		for(int count : widths)
+			total += count;
+		System.out.println("Statements:");
+		for(int i = 1; i < widths.length; i++)
+			System.out.format("  %2d%s children: %5.1f%% of trees%n", i,
+					i == widths.length - 1 ? "+" : " ",
+					100.0 * widths[i] / total);
+
+		// warm up, then time
+		for(int i = 0; i < 2; i++) {
+			timeRender(trees, rounds);
+			timeMemory(trees, rounds);
+		}
+		long count = (long)numTrees * rounds;
+		report("Render new:", count, timeRender(trees, rounds));
+		long[] nanos = timeMemory(trees, rounds);
+		report("Store and warm:", count, nanos[0]);
+		report("Answer:", (long)QUESTIONS * rounds, nanos[1]);
+	}
+
+	private static WordTree<StructureTag> tree(Random random,
+			StructureTag[] tags, int width) {
+		WordTree<StructureTag> tree = new WordTree<>(StructureTag.ROOT);
+		for(int i = 0; i < width; i++)
+			tree.addChild(new WordTree<>(tags[random.nextInt(width * 2)],
+					"word"));
+		return tree;
+	}
+
+	// how getTypeIndex() worked before the index
+	private static int scanIndex(WordTree<StructureTag> tree,
+			StructureTag type) {
+		List<WordTree<StructureTag>> children = tree.getChildren();
+		for(int i = 0; i < children.size(); i++)
+			if(children.get(i).getType().equals(type))
+				return i;
+		return -1;
+	}
+
+	// returns nanoseconds
+	private static long timeIndexed(List<WordTree<StructureTag>> trees,
+			StructureTag[] lookups, int rounds) {
+		long start = System.nanoTime();
+		int sum = 0;
+		for(int i = 0; i < rounds; i++)
+			for(WordTree<StructureTag> tree : trees)
+				for(StructureTag type : lookups)
+					sum += tree.getTypeIndex(type);
+		long time = System.nanoTime() - start;
+		// so the work can't be optimized away
+		if(sum == 42)
+			System.out.print("");
+		return time;
+	}
+
+	// returns nanoseconds
+	private static long timeScan(List<WordTree<StructureTag>> trees,
+			StructureTag[] lookups, int rounds) {
+		long start = System.nanoTime();
+		int sum = 0;
+		for(int i = 0; i < rounds; i++)
+			for(WordTree<StructureTag> tree : trees)
+				for(StructureTag type : lookups)
+					sum += scanIndex(tree, type);
+		long time = System.nanoTime() - start;
+		if(sum == 42)
+			System.out.print("");
+		return time;
+	}
+
+	// one lookup on each of a set of new trees, which builds their indexes.
+	// returns nanoseconds
+	private static long timeFirst(Random random, StructureTag[] tags,
+			int width, int numTrees, StructureTag type) {
+		List<WordTree<StructureTag>> trees = new ArrayList<>(numTrees);
+		for(int i = 0; i < numTrees; i++)
+			trees.add(tree(random, tags, width));
+		long start = System.nanoTime();
+		int sum = 0;
+		for(WordTree<StructureTag> tree : trees)
+			sum += tree.getTypeIndex(type);
+		long time = System.nanoTime() - start;
+		if(sum == 42)
+			System.out.print("");
+		return time;
+	}
+
+	// render copies of the trees, so the constructor's cache never hits and
+	// every tree is looked up for the first time. returns nanoseconds
+	private static long timeRender(List<WordTree<StructureTag>> trees,
+			int rounds) {
+		SentenceConstructor constructor =
+				new RecursiveSentenceConstructor(Log.SILENT);
+		long start = System.nanoTime();
+		int length = 0;
+		for(int i = 0; i < rounds; i++)
+			for(WordTree<StructureTag> tree : trees)
+				length += constructor.constructSentence(tree.clone(), true)
+						.length();
+		long time = System.nanoTime() - start;
+		if(length == 42)
+			System.out.print("");
+		return time;
+	}
+
+	// returns { store and warm nanoseconds, answer nanoseconds }
+	private static long[] timeMemory(List<WordTree<StructureTag>> trees,
+			int rounds) {
+		long store = 0;
+		long answer = 0;
+		int found = 0;
+		for(int i = 0; i < rounds; i++) {
+			List<WordTree<StructureTag>> copies = new ArrayList<>();
+			for(WordTree<StructureTag> tree : trees)
+				copies.add(tree.clone());
+			long start = System.nanoTime();
+			ScoredQuestionMemory memory = new ScoredQuestionMemory(Log.SILENT);
+			for(WordTree<StructureTag> tree : copies) {
+				memory.storeStatement(tree);
+				warm(tree);
+			}
+			store += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for(int j = 0; j < QUESTIONS; j++)
+				if(memory.filterQuestion(trees.get(j)) != null)
+					found++;
+			answer += System.nanoTime() - start;
+		}
+		if(found == 42)
+			System.out.print("");
+		return new long[] { store, answer };
+	}
+
+	// the same as BetsyEngine does to its baseline statements
+	private static void warm(WordTree<StructureTag> tree) {
+		tree.visitPreOrder(t -> {
+			t.hashCode();
+			if(!t.isLeaf() && t.numChildren() != 0)
+				t.hasType(t.getChild(0).getType());
+			return true;
+		});
+	}
+
+	private static void report(String name, long count, long nanos) {
+		System.out.format("  %-15s %7.1f ns each%n", name,
+				(double)nanos / count);
+	}
+}
@@ -1,9 +1,13 @@
 package betsy.grammar;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.ArrayList;
 
+import betsy.vocab.SymbolTable;
+
 /**
  * A WordTree is used to group and arrange strings in a tree structure.
  * There are two types of WordTree: a leaf has a single String -- the "word",
@@ -12,16 +16,35 @@ import java.util.ArrayList;
  * generic class so this object could potentially be anything. For Betsy, it is
  * usually a Tag or a StructureTag.
  * The WordTree's children can change, but everything else is immutable.
+ * Every change increments the version of the tree and all of its ancestors, so
+ * anything computed from a tree can be kept until its version changes.
+ * equals() and hashCode() compare structure: two trees are equal if they have
+ * the same types and words, with children in any order. The hash is cached in
+ * each node and cleared up the parent chain when a tree changes, so a tree
+ * shouldn't be changed while it is a key in a hash table.
+ * Leaves get the SymbolTable id of their word if it has one, but a new word
+ * only gets an id when internWords() is called on a tree that is being kept,
+ * so parsing a sentence doesn't add its words to the table. Leaves are
+ * compared by word id when both have one.
  * @author jacob
  *
  * @param <T> the type of object used to tag each tree or leaf
  */
-public class WordTree<T> {
+public class WordTree<T> implements WordTreeView<T, WordTree<T>> {
 	private final T type;
 	private final boolean isLeaf;
-	private final String word;
+	// both change only when internWords() gives the word an id
+	private String word;
+	private int wordId;
 	private final List<WordTree<T>> children;
+	private final List<WordTree<T>> childView;
 	private WordTree<T> parent;
+	private int version = 0;
+	// structural hash, 0 if it needs to be computed
+	private int hash = 0;
+	// built the first time children are searched by type, if there are at
+	// least INDEX_MIN_CHILDREN of them
+	private volatile TypeIndex typeIndex = null;
 	
 	/**
 	 * Construct a leaf WordTree, with a word
@@ -31,8 +54,13 @@ public class WordTree<T> {
 	public WordTree(T type, String word) {
 		this.type = type;
 		this.isLeaf = true;
-		this.word = word;
-		children = Collections.unmodifiableList(new ArrayList<>(0));
+		this.wordId = word == null ? SymbolTable.NONE
+				: SymbolTable.lookup(word);
+		// share the table's copy of words it already has
+		this.word = wordId == SymbolTable.NONE ? word
+				: SymbolTable.getWord(wordId);
+		children = Collections.emptyList();
+		childView = children;
 		parent = null;
 	}
 	
@@ -46,7 +74,9 @@ public class WordTree<T> {
 		this.type = type;
 		isLeaf = false;
 		this.word = null;
+		this.wordId = SymbolTable.NONE;
 		this.children = children;
+		this.childView = Collections.unmodifiableList(children);
 		for(WordTree<T> child : children) {
 			initChild(child);
 		}
@@ -60,7 +90,9 @@ public class WordTree<T> {
 		this.type = type;
 		isLeaf = false;
 		this.word = null;
+		this.wordId = SymbolTable.NONE;
 		this.children = new ArrayList<>();
+		this.childView = Collections.unmodifiableList(children);
 	}
 	
 	/**
@@ -69,6 +101,26 @@ public class WordTree<T> {
 	 */
 	private void setParent(WordTree<T> p) {
 		parent = p;
+		modified();
+	}
+	
+	// increment the version of this tree and everything that contains it,
+	// and clear their hashes
+	private void modified() {
+		for(WordTree<T> t = this; t != null; t = t.parent) {
+			t.version++;
+			t.hash = 0;
+		}
+	}
+	
+	/**
+	 * Get the modification stamp of the tree. It changes whenever a child is
+	 * added to or removed from this tree or any tree inside it, or when this
+	 * tree is moved to a different parent.
+	 * @return a number that is different after every modification
+	 */
+	public int getVersion() {
+		return version;
 	}
 	
 	/**
@@ -97,13 +149,47 @@ public class WordTree<T> {
 		return word;
 	}
 	
+	/**
+	 * Get the SymbolTable id of the WordTree's word, if it is a leaf.
+	 * @return the id of the leaf's word. If the WordTree is a tree, or the
+	 * word isn't in the SymbolTable, returns SymbolTable.NONE.
+	 */
+	public int getWordId() {
+		return wordId;
+	}
+	
+	/**
+	 * Add the words of every leaf in this tree to the SymbolTable, so they
+	 * all have ids. This is for trees that are kept, like statements stored
+	 * in memory -- the table is never emptied, so it should only grow with
+	 * words that are remembered, not with everything that is said.
+	 */
+	public void internWords() {
+		visitPreOrder(tree -> {
+			if(tree.isLeaf && tree.word != null
+					&& tree.wordId == SymbolTable.NONE) {
+				tree.wordId = SymbolTable.intern(tree.word);
+				tree.word = SymbolTable.getWord(tree.wordId);
+			}
+			return true;
+		});
+	}
+	
+	// compare words by id if both have one. ids are equal exactly when words
+	// are, but a word might have been interned since the other tree was made
+	static boolean sameWord(int id1, String word1, int id2, String word2) {
+		if(id1 != SymbolTable.NONE && id2 != SymbolTable.NONE)
+			return id1 == id2;
+		return Objects.equals(word1, word2);
+	}
+	
 	/**
 	 * Get the WordTree's children, if it is a tree
 	 * @return an unmodifiable list. If the WordTree is a tree, the list will
 	 * have its children; otherwise it will be empty.
 	 */
 	public List<WordTree<T>> getChildren() {
-		return Collections.unmodifiableList(children);
+		return childView;
 	}
 	
 	/**
@@ -117,13 +203,81 @@ public class WordTree<T> {
 	 */
 	public List<WordTree<T>> getAllLeaves() {
 		List<WordTree<T>> leaves = new ArrayList<>();
+		collectLeaves(leaves);
+		return leaves;
+	}
+	
+	private void collectLeaves(List<WordTree<T>> leaves) {
 		if(isLeaf()) {
 			leaves.add(this);
 		} else {
-			for(WordTree<T> child : getChildren())
-				leaves.addAll(child.getAllLeaves());
+			for(int i = 0; i < children.size(); i++)
+				children.get(i).collectLeaves(leaves);
 		}
-		return leaves;
+	}
+	
+	/**
+	 * Visit this tree, then each of its children, their children, etc. in
+	 * order (a depth-first, pre-order traversal). Nothing is allocated. The
+	 * visitor shouldn't add or remove children of trees that haven't been
+	 * visited yet.
+	 * @param visitor called for each tree and leaf
+	 * @return false if the visitor stopped the traversal early
+	 */
+	public boolean visitPreOrder(TreeVisitor<T> visitor) {
+		if(!visitor.visit(this))
+			return false;
+		for(int i = 0; i < children.size(); i++)
+			if(!children.get(i).visitPreOrder(visitor))
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Like visitPreOrder(), but only call the visitor for trees and leaves
+	 * with the specified type. All trees are still searched.
+	 * @param type the type of tree to visit
+	 * @param visitor called for each tree and leaf with that type
+	 * @return false if the visitor stopped the traversal early
+	 */
+	public boolean visitPreOrder(T type, TreeVisitor<T> visitor) {
+		if(this.type.equals(type) && !visitor.visit(this))
+			return false;
+		for(int i = 0; i < children.size(); i++)
+			if(!children.get(i).visitPreOrder(type, visitor))
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Visit each of this tree's children, their children, etc. in order, and
+	 * then this tree (a depth-first, post-order traversal). Nothing is
+	 * allocated. Since a tree is visited after its children, the visitor can
+	 * change the children of the tree it is visiting.
+	 * @param visitor called for each tree and leaf
+	 * @return false if the visitor stopped the traversal early
+	 */
+	public boolean visitPostOrder(TreeVisitor<T> visitor) {
+		for(int i = 0; i < children.size(); i++)
+			if(!children.get(i).visitPostOrder(visitor))
+				return false;
+		return visitor.visit(this);
+	}
+	
+	/**
+	 * Like visitPostOrder(), but only call the visitor for trees and leaves
+	 * with the specified type. All trees are still searched.
+	 * @param type the type of tree to visit
+	 * @param visitor called for each tree and leaf with that type
+	 * @return false if the visitor stopped the traversal early
+	 */
+	public boolean visitPostOrder(T type, TreeVisitor<T> visitor) {
+		for(int i = 0; i < children.size(); i++)
+			if(!children.get(i).visitPostOrder(type, visitor))
+				return false;
+		if(this.type.equals(type))
+			return visitor.visit(this);
+		return true;
 	}
 	
 	/**
@@ -152,11 +306,7 @@ public class WordTree<T> {
 	 * if this is a leaf.
 	 */
 	public boolean hasType(T type) {
-		for(WordTree<T> child : children) {
-			if(child.getType().equals(type))
-				return true;
-		}
-		return false;
+		return getTypeIndex(type) != -1;
 	}
 	
 	/**
@@ -166,11 +316,10 @@ public class WordTree<T> {
 	 * Null if none are found, or if this is a leaf.
 	 */
 	public WordTree<T> getType(T type) {
-		for(WordTree<T> child : children) {
-			if(child.getType().equals(type))
-				return child;
-		}
-		return null;
+		int i = getTypeIndex(type);
+		if(i == -1)
+			return null;
+		return children.get(i);
 	}
 	
 	/**
@@ -181,12 +330,27 @@ public class WordTree<T> {
 	 * that type. -1 if none are found, or if this is a leaf.
 	 */
 	public int getTypeIndex(T type) {
-		int i = 0;
-		for(WordTree<T> child : children) {
-			if(child.getType().equals(type))
-				return i;
-			i++;
+		if(children.size() < INDEX_MIN_CHILDREN)
+			return scanTypeIndex(type);
+		TypeIndex index = typeIndex;
+		if(index == null) {
+			index = buildTypeIndex();
+			typeIndex = index;
+		}
+		if(index.enumClass != null && type instanceof Enum
+				&& ((Enum<?>)type).getDeclaringClass() == index.enumClass) {
+			int ordinal = ((Enum<?>)type).ordinal();
+			if(ordinal < index.first.length)
+				return index.first[ordinal];
+			return -1;
 		}
+		return scanTypeIndex(type);
+	}
+	
+	private int scanTypeIndex(T type) {
+		for(int i = 0; i < children.size(); i++)
+			if(children.get(i).getType().equals(type))
+				return i;
 		return -1;
 	}
 	
@@ -198,7 +362,11 @@ public class WordTree<T> {
 	 */
 	public List<WordTree<T>> getAllType(T type) {
 		List<WordTree<T>> all = new ArrayList<>();
-		for(WordTree<T> child : children) {
+		int first = getTypeIndex(type);
+		if(first == -1)
+			return all;
+		for(int i = first; i < children.size(); i++) {
+			WordTree<T> child = children.get(i);
 			if(child.getType().equals(type))
 				all.add(child);
 		}
@@ -214,12 +382,7 @@ public class WordTree<T> {
 	 * False if this is a leaf.
 	 */
 	public boolean hasLeaf(T type, String word) {
-		for(WordTree<T> child : children) {
-			if(child.isLeaf() && child.getType().equals(type)
-					&& child.getWord().equals(word))
-				return true;
-		}
-		return false;
+		return getLeafIndex(type, word) != -1;
 	}
 	
 	/**
@@ -231,12 +394,10 @@ public class WordTree<T> {
 	 * none are found or if this is a leaf.
 	 */
 	public WordTree<T> getLeaf(T type, String word) {
-		for(WordTree<T> child : children) {
-			if(child.isLeaf() && child.getType().equals(type)
-					&& child.getWord().equals(word))
-				return child;
-		}
-		return null;
+		int i = getLeafIndex(type, word);
+		if(i == -1)
+			return null;
+		return children.get(i);
 	}
 	
 	/**
@@ -248,16 +409,76 @@ public class WordTree<T> {
 	 * criteria. -1 if none are found or if this is a leaf.
 	 */
 	public int getLeafIndex(T type, String word) {
-		int i = 0;
-		for(WordTree<T> child : children) {
-			if(child.isLeaf() && child.getType().equals(type)
-					&& child.getWord().equals(word))
+		int first = getTypeIndex(type);
+		if(first == -1)
+			return -1;
+		int id = SymbolTable.lookup(word);
+		for(int i = first; i < children.size(); i++) {
+			WordTree<T> child = children.get(i);
+			if(child.isLeaf() && sameWord(child.wordId, child.word, id, word)
+					&& child.getType().equals(type))
 				return i;
-			i++;
 		}
 		return -1;
 	}
 	
+	/**
+	 * Trees with fewer children than this are searched instead of indexed.
+	 * Most parsed trees have one to three children, and searching those is
+	 * faster than the index lookup, without the index's allocation. See
+	 * TypeIndexBenchmark.
+	 */
+	static final int INDEX_MIN_CHILDREN = 8;
+	
+	/**
+	 * Maps the ordinal of a child's type to the index of the first child with
+	 * that type (or -1). Only used if every child's type is a constant of the
+	 * same enum -- otherwise enumClass is null and children are searched.
+	 */
+	private static class TypeIndex {
+		final Class<?> enumClass;
+		int[] first;
+		
+		TypeIndex(Class<?> enumClass, int[] first) {
+			this.enumClass = enumClass;
+			this.first = first;
+		}
+	}
+	
+	private static final TypeIndex NOT_INDEXED = new TypeIndex(null, null);
+	
+	private TypeIndex buildTypeIndex() {
+		Class<?> enumClass = enumClassOf(children.get(0).getType());
+		if(enumClass == null)
+			return NOT_INDEXED;
+		TypeIndex index = new TypeIndex(enumClass, new int[0]);
+		for(int i = 0; i < children.size(); i++)
+			if(!indexChild(index, children.get(i).getType(), i))
+				return NOT_INDEXED;
+		return index;
+	}
+	
+	// add a child to the index, return false if it can't be indexed
+	private static boolean indexChild(TypeIndex index, Object type, int i) {
+		if(enumClassOf(type) != index.enumClass)
+			return false;
+		int ordinal = ((Enum<?>)type).ordinal();
+		if(ordinal >= index.first.length) {
+			int oldLength = index.first.length;
+			index.first = Arrays.copyOf(index.first, ordinal + 1);
+			Arrays.fill(index.first, oldLength, index.first.length, -1);
+		}
+		if(index.first[ordinal] == -1)
+			index.first[ordinal] = i;
+		return true;
+	}
+	
+	private static Class<?> enumClassOf(Object type) {
+		if(type instanceof Enum)
+			return ((Enum<?>)type).getDeclaringClass();
+		return null;
+	}
+	
 	/**
 	 * Get the "parent" of this WordTree - the tree that contains this tree as
 	 * a child.
@@ -276,6 +497,13 @@ public class WordTree<T> {
 	public WordTree<T> addChild(WordTree<T> tree) {
 		children.add(tree);
 		initChild(tree);
+		TypeIndex index = typeIndex;
+		if(index != null && index != NOT_INDEXED) {
+			// if the tree was already a child of this one, initChild()
+			// removed it from its old position and the index was dropped
+			if(!indexChild(index, tree.getType(), children.size() - 1))
+				typeIndex = NOT_INDEXED;
+		}
 		return tree;
 	}
 	
@@ -286,12 +514,24 @@ public class WordTree<T> {
 	 * @param tree the child to remove
 	 */
 	public void removeChild(WordTree<T> tree) {
-		if(children.contains(tree)) {
-			children.remove(tree);
+		// children are compared by identity -- an equal tree isn't the same
+		// child
+		int i = indexOfChild(tree);
+		if(i != -1) {
+			children.remove(i);
+			typeIndex = null;
+			modified();
 			tree.setParent(null);
 		}
 	}
 	
+	private int indexOfChild(WordTree<T> tree) {
+		for(int i = 0; i < children.size(); i++)
+			if(children.get(i) == tree)
+				return i;
+		return -1;
+	}
+	
 	/**
 	 * Remove the child at the specified index. Behavior is undefined if the
 	 * index is out of range, or if this is a leaf.
@@ -391,16 +631,15 @@ public class WordTree<T> {
 	 * @return true if the trees match, as specified above
 	 */
 	public boolean exactMatch(WordTree<T> tree2, boolean ignoreExtraChildren) {
+		if(!ignoreExtraChildren)
+			return equals(tree2);
 		if(!getType().equals(tree2.getType()))
 			return false;
 		if(isLeaf() != tree2.isLeaf())
 			return false;
 		if(isLeaf()) {
-			return getWord().equals(tree2.getWord());
+			return sameWord(wordId, word, tree2.wordId, tree2.word);
 		} else {
-			if(!ignoreExtraChildren
-					&& getChildren().size() != tree2.getChildren().size())
-				return false;
 			for(WordTree<T> child : getChildren()) {
 				boolean tree2ChildFound = false;
 				for(WordTree<T> child2 : tree2.getChildren()) {
@@ -416,4 +655,87 @@ public class WordTree<T> {
 			return true;
 		}
 	}
+	
+	/**
+	 * Get a hash of the tree's structure. It doesn't depend on the order of
+	 * children, so trees that are equal() have the same hash. It is cached
+	 * until the tree changes.
+	 */
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if(h == 0) {
+			if(isLeaf()) {
+				h = mix(typeHash() * 31 + (word == null ? 0 : word.hashCode()));
+			} else {
+				// adding is order-insensitive, mixing first keeps equal
+				// children from cancelling out
+				h = mix(typeHash());
+				for(int i = 0; i < children.size(); i++)
+					h += mix(children.get(i).hashCode());
+			}
+			if(h == 0)
+				h = 1;
+			hash = h;
+		}
+		return h;
+	}
+	
+	private int typeHash() {
+		// ordinals don't change between runs, unlike Enum.hashCode()
+		if(type instanceof Enum)
+			return ((Enum<?>)type).ordinal() + 1;
+		return type == null ? 0 : type.hashCode();
+	}
+	
+	// finalizer from MurmurHash3
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	/**
+	 * Check if another tree has the same structure as this one: the same type,
+	 * the same word if it is a leaf, and children that are equal to this
+	 * tree's children, in any order. Trees with different hashes are rejected
+	 * immediately.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if(o == this)
+			return true;
+		if(!(o instanceof WordTree))
+			return false;
+		WordTree<?> tree2 = (WordTree<?>)o;
+		if(hashCode() != tree2.hashCode())
+			return false;
+		if(isLeaf() != tree2.isLeaf() || !getType().equals(tree2.getType()))
+			return false;
+		if(isLeaf())
+			return sameWord(wordId, word, tree2.wordId, tree2.word);
+		
+		int n = children.size();
+		if(n != tree2.children.size())
+			return false;
+		// match each child with a different child of tree2
+		boolean[] matched = new boolean[n];
+		for(int i = 0; i < n; i++) {
+			WordTree<T> child = children.get(i);
+			boolean found = false;
+			for(int j = 0; j < n; j++) {
+				if(!matched[j] && child.equals(tree2.children.get(j))) {
+					matched[j] = true;
+					found = true;
+					break;
+				}
+			}
+			if(!found)
+				return false;
+		}
+		return true;
+	}
 }
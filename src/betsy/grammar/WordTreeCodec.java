@@ -0,0 +1,343 @@
+package betsy.grammar;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for WordTrees of StructureTags. Trees are written
+ * straight into a ByteBuffer and read straight out of one, without building
+ * any intermediate arrays. Any number of trees can be written after one
+ * header. Words are only written the first time they appear -- after that,
+ * they are referred to by their index in a string table, which the Encoder and
+ * Decoder each keep.
+ * <p>
+ * Tags are written by ordinal, so a stream can only be read if StructureTag
+ * hasn't changed since it was written. The header has a hash of the tag
+ * names in order, which changes if a tag is added, removed, renamed or moved.
+ * <p>
+ * Format (varint = unsigned LEB128):
+ * <pre>
+ * header: int magic, varint version, varint number of StructureTags,
+ *         int hash of the StructureTag names, in order
+ * tree:   varint (tag ordinal &lt;&lt; 1 | isLeaf)
+ *         leaf: varint word (0 = null, 1 = new word, n = table[n - 2])
+ *               new word: varint length, UTF-8 bytes
+ *         tree: varint number of children, children
+ * </pre>
+ * @author jacob
+ *
+ */
+public class WordTreeCodec {
+
+	private static final int MAGIC = 0x42575443; // "BWTC"
+	/**
+	 * The version of the format written by Encoder.
+	 */
+	public static final int VERSION = 2;
+
+	private static final StructureTag[] TAGS = StructureTag.values();
+	private static final int TAGS_HASH = tagsHash();
+
+	private static final int NULL_WORD = 0;
+	private static final int NEW_WORD = 1;
+	private static final int FIRST_INDEX = 2;
+
+	/**
+	 * Writes trees to ByteBuffers. An Encoder keeps the table of words it has
+	 * written, so all trees written by one Encoder must be read by one Decoder,
+	 * in the same order.
+	 */
+	public static class Encoder {
+		private final Map<String, Integer> table = new HashMap<>();
+		private final List<String> words = new ArrayList<>();
+
+		/**
+		 * Write the header. Do this once, before any trees.
+		 * @param buffer where to write the header
+		 * @return false if the buffer didn't have room. Nothing is written.
+		 */
+		public boolean writeHeader(ByteBuffer buffer) {
+			int start = buffer.position();
+			try {
+				buffer.putInt(MAGIC);
+				writeVarint(buffer, VERSION);
+				writeVarint(buffer, TAGS.length);
+				buffer.putInt(TAGS_HASH);
+				return true;
+			} catch (BufferOverflowException e) {
+				buffer.position(start);
+				return false;
+			}
+		}
+
+		/**
+		 * Write a tree.
+		 * @param tree the tree to write
+		 * @param buffer where to write the tree
+		 * @return false if the buffer didn't have room for the whole tree.
+		 * Nothing is written, and the tree can be written again to a new
+		 * buffer.
+		 */
+		public boolean encode(WordTree<StructureTag> tree, ByteBuffer buffer) {
+			int start = buffer.position();
+			int tableSize = words.size();
+			try {
+				write(tree, buffer);
+				return true;
+			} catch (BufferOverflowException e) {
+				buffer.position(start);
+				// forget the words that were never written
+				while(words.size() > tableSize)
+					table.remove(words.remove(words.size() - 1));
+				return false;
+			}
+		}
+
+		private void write(WordTree<StructureTag> tree, ByteBuffer buffer) {
+			writeVarint(buffer, tree.getType().ordinal() << 1
+					| (tree.isLeaf() ? 1 : 0));
+			if(tree.isLeaf()) {
+				writeWord(tree.getWord(), buffer);
+			} else {
+				int n = tree.numChildren();
+				writeVarint(buffer, n);
+				for(int i = 0; i < n; i++)
+					write(tree.getChild(i), buffer);
+			}
+		}
+
+		private void writeWord(String word, ByteBuffer buffer) {
+			if(word == null) {
+				writeVarint(buffer, NULL_WORD);
+				return;
+			}
+			Integer index = table.get(word);
+			if(index != null) {
+				writeVarint(buffer, index + FIRST_INDEX);
+				return;
+			}
+			writeVarint(buffer, NEW_WORD);
+			writeVarint(buffer, utf8Length(word));
+			writeUtf8(word, buffer);
+			table.put(word, words.size());
+			words.add(word);
+		}
+	}
+
+	/**
+	 * Reads trees written by an Encoder.
+	 */
+	public static class Decoder {
+		private final List<String> words = new ArrayList<>();
+		private char[] chars = new char[64];
+
+		/**
+		 * Read and check the header.
+		 * @param buffer the buffer to read from
+		 * @throws IOException if the data isn't a tree stream, or was written
+		 * by an incompatible version or with different StructureTags
+		 * @throws BufferUnderflowException if the whole header isn't there
+		 */
+		public void readHeader(ByteBuffer buffer) throws IOException {
+			int start = buffer.position();
+			try {
+				if(buffer.getInt() != MAGIC)
+					throw new IOException("Not a WordTree stream");
+				int version = readVarint(buffer);
+				if(version != VERSION)
+					throw new IOException("Unsupported WordTree stream version "
+							+ version);
+				int numTags = readVarint(buffer);
+				if(numTags != TAGS.length)
+					throw new IOException("WordTree stream has " + numTags
+							+ " StructureTags, expected " + TAGS.length);
+				if(buffer.getInt() != TAGS_HASH)
+					throw new IOException(
+							"WordTree stream has different StructureTags");
+			} catch (BufferUnderflowException e) {
+				buffer.position(start);
+				throw e;
+			}
+		}
+
+		/**
+		 * Read the next tree.
+		 * @param buffer the buffer to read from
+		 * @return the tree, or null if the buffer doesn't hold a whole tree.
+		 * Nothing is read in that case, so it can be tried again once more of
+		 * the stream is in the buffer.
+		 * @throws IOException if the data is corrupt
+		 */
+		public WordTree<StructureTag> decode(ByteBuffer buffer)
+				throws IOException {
+			int start = buffer.position();
+			int tableSize = words.size();
+			try {
+				return read(buffer);
+			} catch (BufferUnderflowException e) {
+				buffer.position(start);
+				while(words.size() > tableSize)
+					words.remove(words.size() - 1);
+				return null;
+			}
+		}
+
+		private WordTree<StructureTag> read(ByteBuffer buffer)
+				throws IOException {
+			int header = readVarint(buffer);
+			int ordinal = header >>> 1;
+			if(ordinal >= TAGS.length)
+				throw new IOException("Bad tag " + ordinal);
+			StructureTag tag = TAGS[ordinal];
+			if((header & 1) != 0)
+				return new WordTree<>(tag, readWord(buffer));
+			int n = readVarint(buffer);
+			// a corrupt count can't make a huge list: every child is a byte
+			int capacity = Math.min(n, buffer.remaining());
+			WordTree<StructureTag> tree =
+					new WordTree<>(tag, new ArrayList<>(capacity));
+			for(int i = 0; i < n; i++)
+				tree.addChild(read(buffer));
+			return tree;
+		}
+
+		private String readWord(ByteBuffer buffer) throws IOException {
+			int ref = readVarint(buffer);
+			if(ref == NULL_WORD)
+				return null;
+			if(ref != NEW_WORD) {
+				int index = ref - FIRST_INDEX;
+				if(index >= words.size())
+					throw new IOException("Bad word index " + index);
+				return words.get(index);
+			}
+			int length = readVarint(buffer);
+			if(length > buffer.remaining())
+				throw new BufferUnderflowException();
+			String word;
+			if(buffer.hasArray()) {
+				word = new String(buffer.array(),
+						buffer.arrayOffset() + buffer.position(), length,
+						StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+			} else {
+				word = readUtf8(buffer, length);
+			}
+			words.add(word);
+			return word;
+		}
+
+		// decode UTF-8 from a direct buffer without copying it to an array
+		private String readUtf8(ByteBuffer buffer, int length)
+				throws IOException {
+			if(chars.length < length)
+				chars = new char[Math.max(length, chars.length * 2)];
+			int end = buffer.position() + length;
+			int n = 0;
+			while(buffer.position() < end) {
+				int b = buffer.get() & 0xff;
+				int c;
+				if(b < 0x80) {
+					c = b;
+				} else if(b < 0xe0) {
+					c = (b & 0x1f) << 6 | (buffer.get() & 0x3f);
+				} else if(b < 0xf0) {
+					c = (b & 0x0f) << 12 | (buffer.get() & 0x3f) << 6
+							| (buffer.get() & 0x3f);
+				} else {
+					c = (b & 0x07) << 18 | (buffer.get() & 0x3f) << 12
+							| (buffer.get() & 0x3f) << 6 | (buffer.get() & 0x3f);
+				}
+				if(c >= 0x10000) {
+					chars[n++] = Character.highSurrogate(c);
+					chars[n++] = Character.lowSurrogate(c);
+				} else {
+					chars[n++] = (char)c;
+				}
+			}
+			if(buffer.position() != end)
+				throw new IOException("Bad UTF-8 word");
+			return new String(chars, 0, n);
+		}
+	}
+
+	// like List.hashCode() of the names, which is the same on every JVM
+	private static int tagsHash() {
+		int hash = 1;
+		for(StructureTag tag : TAGS)
+			hash = 31 * hash + tag.name().hashCode();
+		return hash;
+	}
+
+	private static void writeVarint(ByteBuffer buffer, int value) {
+		while((value & ~0x7f) != 0) {
+			buffer.put((byte)(value & 0x7f | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+
+	// every varint is a count, index or length, so one that doesn't fit in a
+	// non-negative int means the data is corrupt
+	private static int readVarint(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			byte b = buffer.get();
+			if(shift == 28 && (b & 0x78) != 0)
+				throw new IOException("Bad varint");
+			value |= (b & 0x7f) << shift;
+			if(b >= 0)
+				return value;
+		}
+		throw new IOException("Bad varint");
+	}
+
+	private static int utf8Length(String s) {
+		int length = 0;
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c < 0x80) {
+				length++;
+			} else if(c < 0x800) {
+				length += 2;
+			} else if(Character.isHighSurrogate(c) && i + 1 < s.length()
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	private static void writeUtf8(String s, ByteBuffer buffer) {
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c < 0x80) {
+				buffer.put((byte)c);
+			} else if(c < 0x800) {
+				buffer.put((byte)(0xc0 | c >> 6));
+				buffer.put((byte)(0x80 | c & 0x3f));
+			} else if(Character.isHighSurrogate(c) && i + 1 < s.length()
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buffer.put((byte)(0xf0 | cp >> 18));
+				buffer.put((byte)(0x80 | cp >> 12 & 0x3f));
+				buffer.put((byte)(0x80 | cp >> 6 & 0x3f));
+				buffer.put((byte)(0x80 | cp & 0x3f));
+			} else {
+				buffer.put((byte)(0xe0 | c >> 12));
+				buffer.put((byte)(0x80 | c >> 6 & 0x3f));
+				buffer.put((byte)(0x80 | c & 0x3f));
+			}
+		}
+	}
+}
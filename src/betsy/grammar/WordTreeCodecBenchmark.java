@@ -0,0 +1,319 @@
+package betsy.grammar;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static betsy.grammar.StructureTag.*;
+
+/**
+ * Checks that WordTreeCodec gives back the trees it was given, and times it.
+ * Everything is done with both heap and direct buffers, since the Decoder
+ * reads words from them differently. The checks are:
+ * <ul>
+ * <li>A whole stream, written and read in one buffer.</li>
+ * <li>A stream written through a small buffer that is emptied whenever
+ * encode() runs out of room, and read through a buffer that is given a few
+ * bytes at a time, so decode() has to stop in the middle of trees and pick
+ * up where it left off.</li>
+ * <li>A header with a different StructureTag hash is rejected.</li>
+ * <li>Streams with random bytes changed either fail with an IOException or
+ * decode to some trees -- the Decoder never throws anything else.</li>
+ * <li>A negative child count, word index or word length fails with an
+ * IOException.</li>
+ * </ul>
+ * The trees are the random statements from SentenceBenchmark, plus a few
+ * with null words and words outside of ASCII.
+ * <p>
+ * Usage: <code>WordTreeCodecBenchmark [trees [rounds]]</code>
+ * <br>Defaults are 1024 trees and 200 rounds.
+ * @author jacob
+ *
+ */
+public class WordTreeCodecBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int numTrees = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		Random random = new Random(1);
+		List<WordTree<StructureTag>> trees = new ArrayList<>(numTrees + 1);
+		trees.add(unusualTree());
+		for(int i = 0; i < numTrees; i++)
+			trees.add(SentenceBenchmark.statement(random));
+
+		byte[] stream = encodeAll(trees);
+		System.out.println(trees.size() + " trees, " + stream.length
+				+ " bytes");
+		for(boolean direct : new boolean[] { false, true }) {
+			String kind = direct ? "Direct" : "Heap";
+			check(kind + ", whole stream", trees,
+					decodeAll(fill(allocate(stream.length, direct), stream)));
+			check(kind + ", in pieces", trees,
+					decodeInPieces(stream, direct, 7));
+			checkBadHeader(direct);
+			checkCorrupt(stream, direct, 10000);
+			checkNegative(direct);
+		}
+
+		// warm up, then time
+		for(int i = 0; i < 2; i++)
+			for(boolean direct : new boolean[] { false, true })
+				time(trees, stream.length, direct, rounds);
+		for(boolean direct : new boolean[] { false, true }) {
+			long[] nanos = time(trees, stream.length, direct, rounds);
+			String kind = direct ? "Direct" : "Heap";
+			report(kind + " encode:", trees.size(), stream.length, rounds,
+					nanos[0]);
+			report(kind + " decode:", trees.size(), stream.length, rounds,
+					nanos[1]);
+		}
+	}
+
+	private static WordTree<StructureTag> unusualTree() {
+		WordTree<StructureTag> tree = new WordTree<>(STATEMENT);
+		tree.addChild(new WordTree<>(NOUN, "caf\u00e9"));
+		tree.addChild(new WordTree<>(NOUN, "\u65e5\u672c"));
+		tree.addChild(new WordTree<>(NOUN, "\ud83d\ude00"));
+		tree.addChild(new WordTree<>(PLURAL, (String)null));
+		tree.addChild(new WordTree<>(NOUN, ""));
+		tree.addChild(new WordTree<>(NOUN, "caf\u00e9"));
+		return tree;
+	}
+
+	private static ByteBuffer allocate(int capacity, boolean direct) {
+		return direct ? ByteBuffer.allocateDirect(capacity)
+				: ByteBuffer.allocate(capacity);
+	}
+
+	// put the whole stream in the buffer, ready to read
+	private static ByteBuffer fill(ByteBuffer buffer, byte[] stream) {
+		buffer.put(stream);
+		buffer.flip();
+		return buffer;
+	}
+
+	// write through a small buffer, emptying it whenever it fills up
+	private static byte[] encodeAll(List<WordTree<StructureTag>> trees) {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		ByteBuffer stream = ByteBuffer.allocate(1 << 16);
+		WordTreeCodec.Encoder encoder = new WordTreeCodec.Encoder();
+		if(!encoder.writeHeader(buffer))
+			throw new AssertionError("No room for the header");
+		for(WordTree<StructureTag> tree : trees) {
+			if(encoder.encode(tree, buffer))
+				continue;
+			stream = drain(buffer, stream);
+			if(!encoder.encode(tree, buffer))
+				throw new AssertionError("No room for " + tree);
+		}
+		stream = drain(buffer, stream);
+		byte[] bytes = new byte[stream.position()];
+		stream.flip();
+		stream.get(bytes);
+		return bytes;
+	}
+
+	private static ByteBuffer drain(ByteBuffer buffer, ByteBuffer stream) {
+		buffer.flip();
+		while(stream.remaining() < buffer.remaining()) {
+			ByteBuffer bigger = ByteBuffer.allocate(stream.capacity() * 2);
+			stream.flip();
+			stream = bigger.put(stream);
+		}
+		stream.put(buffer);
+		buffer.clear();
+		return stream;
+	}
+
+	private static List<WordTree<StructureTag>> decodeAll(ByteBuffer buffer)
+			throws IOException {
+		WordTreeCodec.Decoder decoder = new WordTreeCodec.Decoder();
+		decoder.readHeader(buffer);
+		List<WordTree<StructureTag>> trees = new ArrayList<>();
+		while(buffer.hasRemaining()) {
+			WordTree<StructureTag> tree = decoder.decode(buffer);
+			if(tree == null)
+				throw new AssertionError("Stream ended in a tree");
+			trees.add(tree);
+		}
+		return trees;
+	}
+
+	// give the decoder a few more bytes of the stream at a time
+	private static List<WordTree<StructureTag>> decodeInPieces(byte[] stream,
+			boolean direct, int step) throws IOException {
+		ByteBuffer buffer = allocate(stream.length, direct);
+		buffer.limit(0);
+		WordTreeCodec.Decoder decoder = new WordTreeCodec.Decoder();
+		List<WordTree<StructureTag>> trees = new ArrayList<>();
+		boolean readHeader = false;
+		int incomplete = 0;
+		for(int end = 0; end < stream.length; ) {
+			int start = end;
+			end = Math.min(end + step, stream.length);
+			int position = buffer.position();
+			buffer.limit(end);
+			buffer.position(start);
+			buffer.put(stream, start, end - start);
+			buffer.position(position);
+			if(!readHeader) {
+				try {
+					decoder.readHeader(buffer);
+					readHeader = true;
+				} catch (BufferUnderflowException e) {
+					incomplete++;
+					continue;
+				}
+			}
+			while(buffer.hasRemaining()) {
+				WordTree<StructureTag> tree = decoder.decode(buffer);
+				if(tree == null) {
+					incomplete++;
+					break;
+				}
+				trees.add(tree);
+			}
+		}
+		if(incomplete == 0)
+			throw new AssertionError("Every piece held whole trees");
+		return trees;
+	}
+
+	private static void check(String name,
+			List<WordTree<StructureTag>> expected,
+			List<WordTree<StructureTag>> actual) {
+		if(actual.size() != expected.size())
+			throw new AssertionError(name + ": read " + actual.size()
+					+ " trees, expected " + expected.size());
+		// toString() shows the order of children, which equals() ignores
+		for(int i = 0; i < expected.size(); i++)
+			if(!actual.get(i).toString().equals(expected.get(i).toString()))
+				throw new AssertionError(name + ": tree " + i + " is\n"
+						+ actual.get(i) + "\nexpected\n" + expected.get(i));
+		System.out.println(name + ": OK");
+	}
+
+	private static void checkBadHeader(boolean direct) {
+		ByteBuffer buffer = allocate(64, direct);
+		new WordTreeCodec.Encoder().writeHeader(buffer);
+		// the tag hash is the last 4 bytes
+		int last = buffer.position() - 1;
+		buffer.put(last, (byte)(buffer.get(last) ^ 1));
+		buffer.flip();
+		try {
+			new WordTreeCodec.Decoder().readHeader(buffer);
+		} catch (IOException e) {
+			System.out.println((direct ? "Direct" : "Heap")
+					+ ", different tags: rejected");
+			return;
+		}
+		throw new AssertionError("Header with different tags was accepted");
+	}
+
+	private static void checkCorrupt(byte[] stream, boolean direct,
+			int tries) {
+		Random random = new Random(2);
+		int rejected = 0;
+		for(int i = 0; i < tries; i++) {
+			byte[] corrupt = stream.clone();
+			for(int j = random.nextInt(4); j >= 0; j--)
+				corrupt[random.nextInt(corrupt.length)] =
+						(byte)random.nextInt(256);
+			ByteBuffer buffer = fill(allocate(corrupt.length, direct),
+					corrupt);
+			try {
+				WordTreeCodec.Decoder decoder = new WordTreeCodec.Decoder();
+				decoder.readHeader(buffer);
+				while(buffer.hasRemaining())
+					if(decoder.decode(buffer) == null)
+						break;
+			} catch (IOException e) {
+				rejected++;
+			} catch (RuntimeException e) {
+				throw new AssertionError("Corrupt stream threw " + e, e);
+			}
+		}
+		System.out.println((direct ? "Direct" : "Heap") + ", corrupt: "
+				+ rejected + " of " + tries + " rejected, none threw");
+	}
+
+	private static void checkNegative(boolean direct) {
+		int tree = STATEMENT.ordinal() << 1;
+		int leaf = NOUN.ordinal() << 1 | 1;
+		int[][] streams = {
+			{ tree, -1 }, // child count
+			{ leaf, -1 }, // word index
+			{ leaf, 1, -1 } // new word's length
+		};
+		for(int[] varints : streams) {
+			ByteBuffer buffer = allocate(64, direct);
+			new WordTreeCodec.Encoder().writeHeader(buffer);
+			for(int value : varints)
+				putVarint(buffer, value);
+			buffer.flip();
+			try {
+				WordTreeCodec.Decoder decoder = new WordTreeCodec.Decoder();
+				decoder.readHeader(buffer);
+				decoder.decode(buffer);
+				throw new AssertionError("Negative value was accepted");
+			} catch (IOException e) {
+				// expected
+			} catch (RuntimeException e) {
+				throw new AssertionError("Negative value threw " + e, e);
+			}
+		}
+		System.out.println((direct ? "Direct" : "Heap")
+				+ ", negative values: rejected");
+	}
+
+	// the same as WordTreeCodec writes them
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while((value & ~0x7f) != 0) {
+			buffer.put((byte)(value & 0x7f | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+
+	// returns { encode nanoseconds, decode nanoseconds }
+	private static long[] time(List<WordTree<StructureTag>> trees,
+			int length, boolean direct, int rounds) throws IOException {
+		ByteBuffer buffer = allocate(length, direct);
+		long encode = 0;
+		long decode = 0;
+		int count = 0;
+		for(int i = 0; i < rounds; i++) {
+			buffer.clear();
+			long start = System.nanoTime();
+			WordTreeCodec.Encoder encoder = new WordTreeCodec.Encoder();
+			encoder.writeHeader(buffer);
+			for(WordTree<StructureTag> tree : trees)
+				if(!encoder.encode(tree, buffer))
+					throw new AssertionError("Stream didn't fit");
+			encode += System.nanoTime() - start;
+
+			buffer.flip();
+			start = System.nanoTime();
+			WordTreeCodec.Decoder decoder = new WordTreeCodec.Decoder();
+			decoder.readHeader(buffer);
+			while(buffer.hasRemaining())
+				count += decoder.decode(buffer).numChildren();
+			decode += System.nanoTime() - start;
+		}
+		// so the work can't be optimized away
+		if(count == 42)
+			System.out.print("");
+		return new long[] { encode, decode };
+	}
+
+	private static void report(String name, int trees, int length,
+			int rounds, long nanos) {
+		double seconds = nanos / 1e9;
+		System.out.format("%-15s %9.0f trees/sec, %7.1f MB/sec%n", name,
+				(double)trees * rounds / seconds,
+				(double)length * rounds / seconds / 1e6);
+	}
+}
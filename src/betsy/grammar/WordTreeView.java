@@ -0,0 +1,82 @@
+package betsy.grammar;
+
+import java.util.List;
+
+/**
+ * The read-only parts of a tree, which WordTree and PersistentWordTree both
+ * have. Code that only looks at trees, like the RecursiveSentenceConstructor,
+ * can be written once against this interface and used with either kind
+ * without converting between them.
+ * @author jacob
+ *
+ * @param <T> the type of object used to tag each tree or leaf
+ * @param <N> the kind of tree -- the type of the tree's children
+ */
+public interface WordTreeView<T, N extends WordTreeView<T, N>> {
+
+	/**
+	 * Get the identifying "type" object of the tree
+	 * @return the tree's type, of type T
+	 */
+	public T getType();
+
+	/**
+	 * Check if the tree is a leaf.
+	 * @return true if the tree is a leaf
+	 */
+	public boolean isLeaf();
+
+	/**
+	 * Get the word, if this is a leaf.
+	 * @return the leaf's word, or null if this is a tree
+	 */
+	public String getWord();
+
+	/**
+	 * Get the SymbolTable id of the word, if this is a leaf.
+	 * @return the id of the leaf's word, or SymbolTable.NONE if this is a tree
+	 * or the word isn't in the SymbolTable
+	 */
+	public int getWordId();
+
+	/**
+	 * Get the children of the tree.
+	 * @return the children, which shouldn't be modified. Empty if this is a
+	 * leaf.
+	 */
+	public List<N> getChildren();
+
+	/**
+	 * Get the number of children this tree has.
+	 * @return the number of children, 0 if this is a leaf
+	 */
+	public int numChildren();
+
+	/**
+	 * Get the child at the specific index.
+	 * @param i the index of the child
+	 * @return the child at that index
+	 */
+	public N getChild(int i);
+
+	/**
+	 * Check if one of the tree's direct children has the specified type.
+	 * @param type the type to search for
+	 * @return true if a direct child has this type
+	 */
+	public boolean hasType(T type);
+
+	/**
+	 * Get the first direct child of this tree with the specified type.
+	 * @param type the type to search for
+	 * @return the first child with that type, or null if there isn't one
+	 */
+	public N getType(T type);
+
+	/**
+	 * Get all direct children of this tree with the specified type.
+	 * @param type the type to search for
+	 * @return a new list of the children with that type, in order
+	 */
+	public List<N> getAllType(T type);
+}
@@ -0,0 +1,342 @@
+package betsy.log;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.RollingFileAppender;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * A log4j appender that hands events to a background thread through a bounded,
+ * lock-free ring buffer, so logging never waits for the disk. The background
+ * thread writes to a rotating file. If the buffer is full, events are either
+ * dropped and counted, or the logging thread waits for room, depending on the
+ * Blocking option.
+ * <p>
+ * Like log4j's AsyncAppender, the location of the logging call (%C, %F, %L and
+ * %M in a PatternLayout) is only found if the LocationInfo option is set,
+ * since it takes a stack trace for every event. Otherwise it is written as
+ * "?". Example configuration:
+ * <pre>
+ * log4j.appender.async=betsy.log.AsyncRingAppender
+ * log4j.appender.async.File=betsy.log
+ * log4j.appender.async.MaxFileSize=10MB
+ * log4j.appender.async.MaxBackupIndex=3
+ * log4j.appender.async.BufferSize=4096
+ * log4j.appender.async.Blocking=false
+ * log4j.appender.async.LocationInfo=false
+ * log4j.appender.async.layout=org.apache.log4j.PatternLayout
+ * </pre>
+ * @author jacob
+ *
+ */
+public class AsyncRingAppender extends AppenderSkeleton {
+
+	// how long a logging thread waits for room before trying again
+	private static final long FULL_WAIT_NANOS =
+			TimeUnit.MILLISECONDS.toNanos(1);
+
+	private String file = "betsy.log";
+	private String maxFileSize = "10MB";
+	private int maxBackupIndex = 3;
+	private int bufferSize = 4096;
+	private boolean blocking = false;
+	private boolean locationInfo = false;
+
+	// null until the file is open, so nothing is queued without a writer
+	private volatile Ring ring;
+	private RollingFileAppender fileAppender;
+	private Thread writer;
+	// true while the writer may be parked, waiting for events
+	private volatile boolean idle = false;
+	private volatile boolean closing = false;
+
+	private final AtomicLong dropped = new AtomicLong();
+	// dropped events that haven't been reported in the file yet
+	private final AtomicLong unreported = new AtomicLong();
+
+	/**
+	 * A bounded multi-producer queue, from Dmitry Vyukov's design. Every slot
+	 * has a sequence number that says whether it is ready to be written to or
+	 * read from, so producers only contend on a single counter.
+	 */
+	private static final class Ring {
+		private final AtomicReferenceArray<LoggingEvent> events;
+		private final AtomicLongArray sequences;
+		private final int mask;
+		private final AtomicLong enqueuePosition = new AtomicLong();
+		private final AtomicLong dequeuePosition = new AtomicLong();
+
+		Ring(int capacity) {
+			events = new AtomicReferenceArray<>(capacity);
+			sequences = new AtomicLongArray(capacity);
+			mask = capacity - 1;
+			for(int i = 0; i < capacity; i++)
+				sequences.set(i, i);
+		}
+
+		boolean offer(LoggingEvent event) {
+			long position = enqueuePosition.get();
+			while(true) {
+				int i = (int)position & mask;
+				long difference = sequences.get(i) - position;
+				if(difference == 0) {
+					if(enqueuePosition.compareAndSet(position, position + 1)) {
+						events.set(i, event);
+						sequences.set(i, position + 1);
+						return true;
+					}
+				} else if(difference < 0) {
+					return false; // full
+				}
+				position = enqueuePosition.get();
+			}
+		}
+
+		LoggingEvent poll() {
+			long position = dequeuePosition.get();
+			while(true) {
+				int i = (int)position & mask;
+				long difference = sequences.get(i) - (position + 1);
+				if(difference == 0) {
+					if(dequeuePosition.compareAndSet(position, position + 1)) {
+						LoggingEvent event = events.get(i);
+						events.set(i, null);
+						sequences.set(i, position + mask + 1);
+						return event;
+					}
+				} else if(difference < 0) {
+					return null; // empty
+				}
+				position = dequeuePosition.get();
+			}
+		}
+	}
+
+	public void setFile(String file) {
+		this.file = file;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public void setMaxFileSize(String maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	public String getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	public void setMaxBackupIndex(int maxBackupIndex) {
+		this.maxBackupIndex = maxBackupIndex;
+	}
+
+	public int getMaxBackupIndex() {
+		return maxBackupIndex;
+	}
+
+	/**
+	 * Set the number of events the buffer can hold. It is rounded up to a
+	 * power of 2.
+	 * @param bufferSize the buffer size
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Set what happens when the buffer is full.
+	 * @param blocking if true, logging waits for room in the buffer. If false,
+	 * the event is dropped and counted.
+	 */
+	public void setBlocking(boolean blocking) {
+		this.blocking = blocking;
+	}
+
+	public boolean getBlocking() {
+		return blocking;
+	}
+
+	/**
+	 * Set whether the location of each logging call is found.
+	 * @param locationInfo if true, the location is found when the event is
+	 * logged, on the logging thread. If false, it is written as "?".
+	 */
+	public void setLocationInfo(boolean locationInfo) {
+		this.locationInfo = locationInfo;
+	}
+
+	public boolean getLocationInfo() {
+		return locationInfo;
+	}
+
+	/**
+	 * Get the number of events that were dropped because the buffer was full.
+	 * @return the total number of dropped events
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	@Override
+	public void activateOptions() {
+		try {
+			fileAppender = new RollingFileAppender(getLayout(), file, true);
+		} catch (IOException e) {
+			errorHandler.error("Couldn't open log file " + file, e, 0);
+			return;
+		}
+		fileAppender.setMaxFileSize(maxFileSize);
+		fileAppender.setMaxBackupIndex(maxBackupIndex);
+		fileAppender.setName(getName() + ".file");
+
+		int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+		writer = new Thread(this::writeEvents,
+				"AsyncRingAppender-" + getName());
+		writer.setDaemon(true);
+		// publishes the writer to logging threads, which unpark it
+		ring = new Ring(capacity);
+		writer.start();
+	}
+
+	/**
+	 * The same as AppenderSkeleton's doAppend(), but not synchronized. The
+	 * ring is safe for any number of logging threads, and a thread waiting
+	 * for room in Blocking mode mustn't hold the appender's lock, or every
+	 * other thread would queue up on the lock behind it.
+	 */
+	@Override
+	public void doAppend(LoggingEvent event) {
+		if(closing)
+			return;
+		if(!isAsSevereAsThreshold(event.getLevel()))
+			return;
+		for(Filter f = getFirstFilter(); f != null; f = f.getNext()) {
+			int decision = f.decide(event);
+			if(decision == Filter.DENY)
+				return;
+			if(decision == Filter.ACCEPT)
+				break;
+		}
+		append(event);
+	}
+
+	@Override
+	protected void append(LoggingEvent event) {
+		Ring ring = this.ring;
+		if(ring == null || closing)
+			return;
+		// everything that depends on the logging thread is captured now, so
+		// the writer doesn't see a different thread's state
+		if(locationInfo) {
+			event.getLocationInformation();
+			event.getRenderedMessage();
+			event.getThreadName();
+			event.getNDC();
+			event.getMDCCopy();
+		} else {
+			event = withoutLocation(event);
+		}
+
+		if(ring.offer(event)) {
+			wakeWriter();
+			return;
+		}
+		if(blocking) {
+			while(!closing) {
+				LockSupport.parkNanos(FULL_WAIT_NANOS);
+				if(ring.offer(event)) {
+					wakeWriter();
+					return;
+				}
+			}
+		}
+		dropped.incrementAndGet();
+		unreported.incrementAndGet();
+		wakeWriter();
+	}
+
+	// a copy of the event, with its location already "found" so the writer
+	// doesn't take a stack trace of itself
+	private static LoggingEvent withoutLocation(LoggingEvent event) {
+		return new LoggingEvent(event.getFQNOfLoggerClass(),
+				event.getLogger(), event.getTimeStamp(), event.getLevel(),
+				event.getRenderedMessage(), event.getThreadName(),
+				event.getThrowableInformation(), event.getNDC(),
+				LocationInfo.NA_LOCATION_INFO, event.getProperties());
+	}
+
+	private void wakeWriter() {
+		if(idle)
+			LockSupport.unpark(writer);
+	}
+
+	private void writeEvents() {
+		while(true) {
+			LoggingEvent event = ring.poll();
+			if(event != null) {
+				fileAppender.doAppend(event);
+				continue;
+			}
+			reportDropped();
+			if(closing)
+				break;
+			// set before looking one last time: a logging thread that adds
+			// an event after that look is sure to see it, and unpark us
+			idle = true;
+			event = ring.poll();
+			if(event == null && !closing && unreported.get() == 0)
+				LockSupport.park(this);
+			idle = false;
+			if(event != null)
+				fileAppender.doAppend(event);
+		}
+	}
+
+	private void reportDropped() {
+		long count = unreported.getAndSet(0);
+		if(count != 0) {
+			fileAppender.doAppend(new LoggingEvent(getClass().getName(),
+					Logger.getLogger(getClass()), Level.WARN,
+					count + " log messages were dropped (buffer full)", null));
+		}
+	}
+
+	@Override
+	public void close() {
+		if(closed)
+			return;
+		closed = true;
+		closing = true;
+		if(writer != null) {
+			LockSupport.unpark(writer);
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(fileAppender != null)
+			fileAppender.close();
+	}
+
+	@Override
+	public boolean requiresLayout() {
+		return true;
+	}
+}
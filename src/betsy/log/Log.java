@@ -0,0 +1,103 @@
+package betsy.log;
+
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A thin wrapper around an slf4j Logger, used for Betsy's diagnostic output.
+ * Messages that are expensive to build (like WordTree.toString()) are passed
+ * as Suppliers, and are only built if their level is enabled, so turning
+ * logging down makes it free. Levels are set in log4j.properties.
+ * @author jacob
+ *
+ */
+public class Log {
+
+	/**
+	 * A Log that discards everything without building any messages.
+	 */
+	public static final Log SILENT = new Log(null);
+
+	private final Logger logger;
+
+	/**
+	 * Create a Log that writes to an slf4j Logger.
+	 * @param logger the Logger, or null to discard everything
+	 */
+	public Log(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * Get a Log named after a class, like LoggerFactory.getLogger().
+	 * @param c the class that will be logging
+	 * @return a new Log
+	 */
+	public static Log getLog(Class<?> c) {
+		return new Log(LoggerFactory.getLogger(c));
+	}
+
+	/**
+	 * Check if debug messages will be written.
+	 * @return true if debug messages are enabled
+	 */
+	public boolean isDebugEnabled() {
+		return logger != null && logger.isDebugEnabled();
+	}
+
+	/**
+	 * Check if trace messages will be written.
+	 * @return true if trace messages are enabled
+	 */
+	public boolean isTraceEnabled() {
+		return logger != null && logger.isTraceEnabled();
+	}
+
+	/**
+	 * Write a warning.
+	 * @param message the warning
+	 */
+	public void warn(String message) {
+		if(logger != null)
+			logger.warn(message);
+	}
+
+	/**
+	 * Write an informational message.
+	 * @param message the message
+	 */
+	public void info(String message) {
+		if(logger != null)
+			logger.info(message);
+	}
+
+	/**
+	 * Write an informational message, building it only if info messages are
+	 * enabled.
+	 * @param message builds the message
+	 */
+	public void info(Supplier<String> message) {
+		if(logger != null && logger.isInfoEnabled())
+			logger.info(message.get());
+	}
+
+	/**
+	 * Write a debug message, building it only if debug messages are enabled.
+	 * @param message builds the message
+	 */
+	public void debug(Supplier<String> message) {
+		if(isDebugEnabled())
+			logger.debug(message.get());
+	}
+
+	/**
+	 * Write a trace message, building it only if trace messages are enabled.
+	 * @param message builds the message
+	 */
+	public void trace(Supplier<String> message) {
+		if(isTraceEnabled())
+			logger.trace(message.get());
+	}
+}
@@ -8,6 +8,7 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.io.*;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import javax.swing.*;
 import javax.swing.tree.*;
@@ -24,7 +25,7 @@ import betsy.grammar.*;
  *
  */
 @SuppressWarnings("serial")
-public class LogFrame extends JFrame {
+public class LogFrame extends JFrame implements ParseTreeListener {
 	private LogPanel panel;
 	private BetsyControlPanel control;
 	
@@ -33,20 +34,21 @@ public class LogFrame extends JFrame {
 	private PipedOutputStream inputPipeOut;
 	private PipedInputStream inputPipeIn;
 	
-	private volatile boolean ready;
+	// counted down once the GUI is created on the event dispatch thread
+	private final CountDownLatch ready;
 	private volatile boolean reset;
 	
 	private boolean isEnabled;
 	
 	public LogFrame() {
 		super("Bot");
-		ready = false;
+		ready = new CountDownLatch(1);
 		reset = false;
 		isEnabled = false;
 		javax.swing.SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
 				createGUI();
-				ready = true;
+				ready.countDown();
 			}
 		});
 		
@@ -65,7 +67,15 @@ public class LogFrame extends JFrame {
 	 * @return true if the frame is ready
 	 */
 	public boolean isReady() {
-		return ready;
+		return ready.getCount() == 0;
+	}
+	
+	/**
+	 * Wait until the frame GUI is fully set up and ready for input.
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void awaitReady() throws InterruptedException {
+		ready.await();
 	}
 	
 	/**
@@ -121,6 +131,7 @@ public class LogFrame extends JFrame {
 	 * existing WordTrees.
 	 * @param tree The WordTree to add to the display
 	 */
+	@Override
 	public void addTree(WordTree<StructureTag> tree) {
 		control.addTree(tree);
 	}
@@ -128,6 +139,7 @@ public class LogFrame extends JFrame {
 	/**
 	 * Remove all WordTrees from the graphical display.
 	 */
+	@Override
 	public void clearTree() {
 		control.clearTree();
 	}
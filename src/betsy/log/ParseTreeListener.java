@@ -0,0 +1,37 @@
+package betsy.log;
+
+import betsy.grammar.StructureTag;
+import betsy.grammar.WordTree;
+
+/**
+ * Something that shows the parse trees Betsy generates from each of the
+ * user's sentences, like the LogFrame.
+ * @author jacob
+ *
+ */
+public interface ParseTreeListener {
+	
+	/**
+	 * A ParseTreeListener that ignores every tree, for running without a
+	 * display.
+	 */
+	public static final ParseTreeListener NONE = new ParseTreeListener() {
+		@Override
+		public void addTree(WordTree<StructureTag> tree) { }
+		
+		@Override
+		public void clearTree() { }
+	};
+	
+	/**
+	 * Show another parse tree, after any that are already shown.
+	 * @param tree the parse tree
+	 */
+	void addTree(WordTree<StructureTag> tree);
+	
+	/**
+	 * Stop showing all parse trees.
+	 */
+	void clearTree();
+	
+}
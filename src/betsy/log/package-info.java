@@ -1,7 +1,7 @@
 /**
- * Has classes used for input and output. Currently there is only one of these:
- * the LogFrame.
+ * Has classes used for input and output: the LogFrame, which the user talks
+ * to Betsy through, and Log, which Betsy's diagnostic messages go through.
  * @author jacob
  *
  */
-package betsy.log;
\ No newline at end of file
+package betsy.log;
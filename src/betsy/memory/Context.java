@@ -1,8 +1,11 @@
 package betsy.memory;
 
-import java.util.List;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
 import betsy.grammar.*;
+import betsy.vocab.ClosedClassWord;
 import betsy.vocab.Names;
 import static betsy.grammar.StructureTag.*;
 
@@ -13,21 +16,40 @@ import static betsy.grammar.StructureTag.*;
  * "him," for male people (based on a list of common male names), "her," for
  * female people (based on a list of common female names), "it" for generic
  * singular objects, and "them" for generic plural objects or people.
+ * The noun phrases are kept as PersistentWordTrees, which can't change, so
+ * they are stored and substituted into later sentences without copying.
  * @author jacob
  *
  */
 public class Context {
 	
-	private WordTree<StructureTag> him = null;
-	private WordTree<StructureTag> her = null;
-	private WordTree<StructureTag> it = null;
-	private WordTree<StructureTag> them = null;
+	private PersistentWordTree<StructureTag> him = null;
+	private PersistentWordTree<StructureTag> her = null;
+	private PersistentWordTree<StructureTag> it = null;
+	private PersistentWordTree<StructureTag> them = null;
+	
+	/**
+	 * Create an empty Context.
+	 */
+	public Context() { }
+	
+	/**
+	 * Create a copy of a Context. The phrases are immutable, so they are
+	 * shared rather than copied.
+	 * @param other the Context to copy
+	 */
+	public Context(Context other) {
+		him = other.him;
+		her = other.her;
+		it = other.it;
+		them = other.them;
+	}
 	
 	/**
 	 * Get the phrase that the word "him" most likely refers to.
-	 * @return WordTree whose root is a NOUN_PHRASE
+	 * @return PersistentWordTree whose root is a NOUN_PHRASE
 	 */
-	public WordTree<StructureTag> getHim() {
+	public PersistentWordTree<StructureTag> getHim() {
 		if(him != null)
 			return him;
 		else
@@ -36,9 +58,9 @@ public class Context {
 	
 	/**
 	 * Get the phrase that the word "her" most likely refers to.
-	 * @return WordTree whose root is a NOUN_PHRASE
+	 * @return PersistentWordTree whose root is a NOUN_PHRASE
 	 */
-	public WordTree<StructureTag> getHer() {
+	public PersistentWordTree<StructureTag> getHer() {
 		if(her != null)
 			return her;
 		else
@@ -47,105 +69,123 @@ public class Context {
 	
 	/**
 	 * Get the phrase that the word "it" most likely refers to.
-	 * @return WordTree whose root is a NOUN_PHRASE
+	 * @return PersistentWordTree whose root is a NOUN_PHRASE
 	 */
-	public WordTree<StructureTag> getIt() {
+	public PersistentWordTree<StructureTag> getIt() {
 		return it;
 	}
 	
 	/**
 	 * Get the phrase that the word "them" most likely refers to.
-	 * @return WordTree whose root is a NOUN_PHRASE
+	 * @return PersistentWordTree whose root is a NOUN_PHRASE
 	 */
-	public WordTree<StructureTag> getThem() {
+	public PersistentWordTree<StructureTag> getThem() {
 		return them;
 	}
 	
 	/**
 	 * Interpret a user's sentence, pick out the nouns and store them as the
-	 * pronouns that could be used to refer to them.
-	 * @param phrase the phrase, as a WordTree, to interpret and search for
-	 * nouns
+	 * pronouns that could be used to refer to them. The noun phrases are
+	 * kept as they are, not copied, since they can't change.
+	 * @param phrase the phrase to interpret and search for nouns
 	 */
-	public void interpretContext(WordTree<StructureTag> phrase) {
-		List<WordTree<StructureTag>> nounPhrases = new ArrayList<>();
-		findNounPhrases(phrase, nounPhrases);
+	public void interpretContext(PersistentWordTree<StructureTag> phrase) {
+		// later phrases replace earlier ones
+		findNounPhrases(phrase);
+	}
+	
+	// pre-order, like the user said them
+	private void findNounPhrases(PersistentWordTree<StructureTag> tree) {
+		if(tree.getType() == NOUN_PHRASE)
+			interpretNounPhrase(tree);
+		for(int i = 0; i < tree.numChildren(); i++)
+			findNounPhrases(tree.getChild(i));
+	}
+	
+	private void interpretNounPhrase(PersistentWordTree<StructureTag> tree) {
+		if(tree.hasType(PLURAL)) {
+			them = tree;
+			return;
+		}
 		
-		// start at end of list
-		for(WordTree<StructureTag> tree : nounPhrases) {
-			
-			if(tree.hasType(PLURAL)) {
-				them = tree;
-				continue;
+		PersistentWordTree<StructureTag> noun = tree.getType(NOUN);
+		
+		if(noun != null) {
+			// check if noun is name of person
+			if(Names.isMale(noun.getWordId())) {
+				him = tree;
+				return;
 			}
-			
-			WordTree<StructureTag> noun = tree.getType(NOUN);
-			
-			if(noun != null) {
-				// check if noun is name of person
-				if(Names.maleNames.contains(noun.getWord())) {
-					him = tree;
-					continue;
-				}
-				if(Names.femaleNames.contains(noun.getWord())) {
-					her = tree;
-					continue;
-				}
+			if(Names.isFemale(noun.getWordId())) {
+				her = tree;
+				return;
 			}
-			
-			// all unmatched nouns are "it"
-			it = tree;
 		}
+		
+		// all unmatched nouns are "it"
+		it = tree;
 	}
 	
 	/**
 	 * Replace pronouns in the phrase like "him," "her," etc. with their
 	 * most likely meaning. Not all pronouns will be replaced -- some may not
 	 * have a match.
-	 * @param phrase the phrase to scan and replace. A new WordTree isn't
-	 * created -- the existing one is modified in place.
+	 * @param phrase the phrase to scan
+	 * @return a new phrase with the pronouns replaced, which shares every
+	 * subtree that didn't change with the old one, and the replacements with
+	 * the context. Only the noun phrases that had a pronoun and the trees
+	 * above them are new. If nothing was replaced, the same phrase is
+	 * returned.
 	 */
-	public void replaceContext(WordTree<StructureTag> phrase) {
-		List<WordTree<StructureTag>> nounPhrases = new ArrayList<>();
-		findNounPhrases(phrase, nounPhrases);
+	public PersistentWordTree<StructureTag> replaceContext(
+			PersistentWordTree<StructureTag> phrase) {
+		// post-order, so the phrases that are added aren't visited
+		PersistentWordTree<StructureTag> replaced = phrase;
+		for(int i = 0; i < phrase.numChildren(); i++) {
+			PersistentWordTree<StructureTag> child = phrase.getChild(i);
+			PersistentWordTree<StructureTag> newChild = replaceContext(child);
+			if(newChild != child)
+				replaced = replaced.setChild(i, newChild);
+		}
 		
-		for(WordTree<StructureTag> tree : nounPhrases) {
-			if(tree.hasType(PRONOUN)) {
-				String pronounWord = tree.getType(PRONOUN).getWord();
-				WordTree<StructureTag> context = getContextFromPronoun(
-						pronounWord);
-				if(context == null)
-					continue;
-				tree.removeChild(tree.getType(PRONOUN));
-				for(WordTree<StructureTag> child : context.getChildren()) {
-					tree.addChild(child.clone());
-				}
+		if(replaced.getType() == NOUN_PHRASE) {
+			int pronoun = replaced.getTypeIndex(PRONOUN);
+			if(pronoun != -1) {
+				PersistentWordTree<StructureTag> context =
+						getContextFromPronoun(
+						replaced.getChild(pronoun).getWord());
+				if(context != null)
+					replaced = replaced.removeChild(pronoun)
+							.addChildren(context.getChildren());
 			}
 		}
+		return replaced;
 	}
 	
 	/**
 	 * Given a pronoun word (he, she, they, it, etc.), get the noun-phrase,
 	 * based on the user's recent sentences, most likely meant by it.
 	 * @param pronoun the pronoun word
-	 * @return a noun-phrase, in the form of a WordTree with root NOUN_PHRASE
+	 * @return a noun-phrase, in the form of a PersistentWordTree with root
+	 * NOUN_PHRASE
 	 */
-	public WordTree<StructureTag> getContextFromPronoun(String pronoun) {
-		if(pronoun.equals("she") || pronoun.equals("her")
-				|| pronoun.equals("herself"))
+	public PersistentWordTree<StructureTag> getContextFromPronoun(String pronoun) {
+		ClosedClassWord word = ClosedClassWord.lookup(pronoun);
+		if(word == null)
+			return null;
+		switch(word.getReferent()) {
+		case HER:
 			return getHer();
-		if(pronoun.equals("he") || pronoun.equals("him")
-				|| pronoun.equals("himself"))
+		case HIM:
 			return getHim();
-		if(pronoun.equals("they") || pronoun.equals("them")
-				|| pronoun.equals("those") || pronoun.equals("themselves"))
+		case THEM:
 			return getThem();
-		if(pronoun.equals("that") || pronoun.equals("it")
-				|| pronoun.equals("itself"))
+		case IT:
 			return getIt();
-		// TODO: all
-		
-		return null;
+		default:
+			// TODO: all
+			return null;
+		}
 	}
 	
 	/**
@@ -169,7 +209,58 @@ public class Context {
 		return sb.toString();
 	}
 	
-	private String phraseToString(WordTree<StructureTag> phrase,
+	/**
+	 * Write the context to a buffer, so it can be restored with read().
+	 * @param encoder the encoder to write the phrases with
+	 * @param buffer the buffer to write to
+	 * @throws BufferOverflowException if the buffer doesn't have room
+	 */
+	public void write(WordTreeCodec.Encoder encoder, ByteBuffer buffer) {
+		writePhrase(him, encoder, buffer);
+		writePhrase(her, encoder, buffer);
+		writePhrase(it, encoder, buffer);
+		writePhrase(them, encoder, buffer);
+	}
+	
+	private static void writePhrase(PersistentWordTree<StructureTag> phrase,
+			WordTreeCodec.Encoder encoder, ByteBuffer buffer) {
+		buffer.put((byte)(phrase == null ? 0 : 1));
+		if(phrase != null && !encoder.encode(phrase.toWordTree(), buffer))
+			throw new BufferOverflowException();
+	}
+	
+	/**
+	 * Read a context written by write().
+	 * @param decoder the decoder used to read the phrases, which must be
+	 * reading the same stream as the Encoder that wrote them
+	 * @param buffer the buffer to read from
+	 * @return a new Context
+	 * @throws IOException if the data is corrupt or incomplete
+	 */
+	public static Context read(WordTreeCodec.Decoder decoder,
+			ByteBuffer buffer) throws IOException {
+		Context context = new Context();
+		context.him = readPhrase(decoder, buffer);
+		context.her = readPhrase(decoder, buffer);
+		context.it = readPhrase(decoder, buffer);
+		context.them = readPhrase(decoder, buffer);
+		return context;
+	}
+	
+	private static PersistentWordTree<StructureTag> readPhrase(
+			WordTreeCodec.Decoder decoder, ByteBuffer buffer)
+			throws IOException {
+		if(!buffer.hasRemaining())
+			throw new IOException("Context is incomplete");
+		if(buffer.get() == 0)
+			return null;
+		WordTree<StructureTag> phrase = decoder.decode(buffer);
+		if(phrase == null)
+			throw new IOException("Context is incomplete");
+		return PersistentWordTree.of(phrase);
+	}
+	
+	private String phraseToString(PersistentWordTree<StructureTag> phrase,
 			SentenceConstructor constructor) {
 		if(phrase == null)
 			return "None.";
@@ -177,14 +268,4 @@ public class Context {
 			return constructor.constructSentence(phrase, false);
 	}
 	
-	private void findNounPhrases(WordTree<StructureTag> tree,
-			List<WordTree<StructureTag>> nounPhrases) {
-		if(tree.getType().equals(NOUN_PHRASE))
-			nounPhrases.add(tree);
-		if(!tree.isLeaf())
-			for(WordTree<StructureTag> child : tree.getChildren())
-				findNounPhrases(child, nounPhrases);
-		return;
-	}
-	
 }
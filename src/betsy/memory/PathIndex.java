@@ -0,0 +1,150 @@
+package betsy.memory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import betsy.grammar.StructureTag;
+import betsy.grammar.WordTree;
+import betsy.vocab.SymbolTable;
+
+/**
+ * An index of the paths in a collection of statements. Each path of tags
+ * from below the root of a statement to one of its nodes is a key, and so is
+ * each path to a leaf together with the leaf's word. Every key has a sorted
+ * list of the ids of the statements containing it. A TreePattern can then find
+ * the statements it might match by intersecting lists, without looking at the
+ * others.
+ * @author jacob
+ *
+ */
+class PathIndex {
+
+	// keys are tag ordinals as chars, then for leaves a separator and the
+	// word id as two chars
+	private static final char WORD_SEPARATOR = '\uffff';
+
+	/**
+	 * A growable, sorted list of statement ids.
+	 */
+	private static class Postings {
+		int[] ids = new int[4];
+		int size = 0;
+
+		void add(int id) {
+			// a statement can contain the same path more than once
+			if(size > 0 && ids[size - 1] == id)
+				return;
+			if(size == ids.length)
+				ids = Arrays.copyOf(ids, size * 2);
+			ids[size++] = id;
+		}
+	}
+
+	private final Map<String, Postings> postings = new HashMap<>();
+	private final StringBuilder keyBuilder = new StringBuilder();
+
+	/**
+	 * Add a statement to the index. Statements must be added in order of
+	 * increasing id.
+	 * @param statement the root of the statement
+	 * @param id the statement's id
+	 */
+	public void add(WordTree<StructureTag> statement, int id) {
+		keyBuilder.setLength(0);
+		for(int i = 0; i < statement.numChildren(); i++)
+			addPaths(statement.getChild(i), id);
+	}
+
+	private void addPaths(WordTree<StructureTag> node, int id) {
+		int length = keyBuilder.length();
+		keyBuilder.append(tagChar(node.getType()));
+		postingsFor(keyBuilder.toString()).add(id);
+		if(node.isLeaf()) {
+			if(node.getWordId() != SymbolTable.NONE) {
+				appendWord(keyBuilder, node.getWordId());
+				postingsFor(keyBuilder.toString()).add(id);
+			}
+		} else {
+			for(int i = 0; i < node.numChildren(); i++)
+				addPaths(node.getChild(i), id);
+		}
+		keyBuilder.setLength(length);
+	}
+
+	private Postings postingsFor(String key) {
+		Postings p = postings.get(key);
+		if(p == null) {
+			p = new Postings();
+			postings.put(key, p);
+		}
+		return p;
+	}
+
+	/**
+	 * Find the statements that could match a pattern. Clauses with wildcards
+	 * can't be looked up, so they are left for TreePattern.match() to check.
+	 * @param pattern the pattern
+	 * @return the sorted ids of the candidate statements, or null if no
+	 * clause could be looked up and every statement is a candidate
+	 */
+	public int[] candidates(TreePattern pattern) {
+		int[] result = null;
+		for(TreePattern.Clause clause : pattern.getClauses()) {
+			if(clause.hasWildcard())
+				continue;
+			int wordId = SymbolTable.NONE;
+			if(clause.condition == TreePattern.Condition.WORD) {
+				wordId = clause.wordId();
+				if(wordId == SymbolTable.NONE)
+					return new int[0]; // the word has never been seen
+			}
+			Postings p = postings.get(key(clause, wordId));
+			if(p == null)
+				return new int[0];
+			result = result == null ? Arrays.copyOf(p.ids, p.size)
+					: intersect(result, p);
+			if(result.length == 0)
+				return result;
+		}
+		return result;
+	}
+
+	private static String key(TreePattern.Clause clause, int wordId) {
+		StringBuilder sb = new StringBuilder(clause.steps.length + 3);
+		for(StructureTag step : clause.steps)
+			sb.append(tagChar(step));
+		if(wordId != SymbolTable.NONE)
+			appendWord(sb, wordId);
+		return sb.toString();
+	}
+
+	private static char tagChar(StructureTag tag) {
+		return (char)tag.ordinal();
+	}
+
+	private static void appendWord(StringBuilder sb, int wordId) {
+		sb.append(WORD_SEPARATOR);
+		sb.append((char)(wordId >>> 16));
+		sb.append((char)wordId);
+	}
+
+	private static int[] intersect(int[] a, Postings b) {
+		int[] result = new int[Math.min(a.length, b.size)];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		while(i < a.length && j < b.size) {
+			if(a[i] < b.ids[j])
+				i++;
+			else if(a[i] > b.ids[j])
+				j++;
+			else {
+				result[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+}
@@ -1,7 +1,10 @@
 package betsy.memory;
 
+import java.util.List;
+
 import betsy.grammar.StructureTag;
 import betsy.grammar.WordTree;
+import betsy.log.Log;
 
 /**
  * QuestionMemory is used to answer a user's questions, or find info related to
@@ -17,6 +20,22 @@ public interface QuestionMemory {
 	 */
 	void storeStatement(WordTree<StructureTag> statement);
 	
+	/**
+	 * Create a copy-on-write view of this memory: a new memory that starts
+	 * out with every statement in this one, without copying them. Statements
+	 * stored in the new memory don't affect this one.
+	 * @param log for the new memory's diagnostic messages
+	 * @return the new memory
+	 */
+	public QuestionMemory overlay(Log log);
+	
+	/**
+	 * Get every statement in memory.
+	 * @return an unmodifiable list of statements, in the order they were
+	 * stored
+	 */
+	public List<WordTree<StructureTag>> getStatements();
+	
 	/**
 	 * Get a statement most related to the provided one
 	 * @param statement the statement to search for
@@ -33,4 +52,13 @@ public interface QuestionMemory {
 	 */
 	public WordTree<StructureTag> filterQuestion(
 			WordTree<StructureTag> question);
+	
+	/**
+	 * Find every stored statement with a certain shape, for example
+	 * everything said about Joe:
+	 * <code>TreePattern.compile("SUBJECT/NOUN_PHRASE/NOUN=joe")</code>
+	 * @param pattern the compiled pattern
+	 * @return the matching statements, in the order they were stored
+	 */
+	public List<TreePattern.Match> query(TreePattern pattern);
 }
@@ -1,10 +1,13 @@
 package betsy.memory;
 
+import java.util.AbstractList;
 import java.util.List;
-import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import betsy.grammar.StructureTag;
 import betsy.grammar.WordTree;
+import betsy.log.Log;
+import betsy.vocab.SymbolTable;
 import static betsy.grammar.StructureTag.CategoryTag.*;
 
 /**
@@ -12,24 +15,124 @@ import static betsy.grammar.StructureTag.CategoryTag.*;
  * statements in memory, and assigns each a score recursively based on how
  * closely they match each other. The highest score wins, unless that score is
  * 0, in which case nobody wins.
+ * <p>
+ * A memory can be used as the baseline of others with overlay(). The baseline
+ * is frozen, and can be shared by any number of overlays and threads; each
+ * overlay only holds the statements stored in it.
  * @author jacob
  *
  */
 public class ScoredQuestionMemory implements QuestionMemory {
 
+	// every statement tested is traced to a logger of its own, so it can be
+	// turned on without the rest of a session's diagnostics
+	private static final Log TRACE_LOG =
+			Log.getLog(ScoredQuestionMemory.class);
+
+	// null if this isn't an overlay
+	private final ScoredQuestionMemory baseline;
+	// only the statements stored in this memory, not the baseline's
 	private List<WordTree<StructureTag>> statements;
-	private final PrintStream logOut;
+	// ids in the index are indices in statements
+	private final PathIndex index;
+	private final Log log;
+	private volatile boolean frozen = false;
+	
+	/**
+	 * @param log Log.SILENT for no diagnostic messages. Otherwise they go to
+	 * this class's own logger, betsy.memory.ScoredQuestionMemory.
+	 */
+	public ScoredQuestionMemory(Log log) {
+		this(null, log);
+	}
 	
-	public ScoredQuestionMemory(PrintStream logOut) {
+	private ScoredQuestionMemory(ScoredQuestionMemory baseline, Log log) {
+		this.baseline = baseline;
 		statements = new ArrayList<>();
-		this.logOut = logOut;
+		index = new PathIndex();
+		this.log = log == Log.SILENT ? Log.SILENT : TRACE_LOG;
+	}
+	
+	/**
+	 * Create a memory that starts out knowing everything this one does.
+	 * Statements stored in the new memory are only added to it, so this
+	 * memory is never copied or changed, and it is frozen: storing a statement
+	 * in it directly is no longer allowed.
+	 * @param log Log.SILENT for no diagnostic messages, otherwise they go to
+	 * this class's logger
+	 * @return a new, empty overlay of this memory
+	 */
+	@Override
+	public ScoredQuestionMemory overlay(Log log) {
+		if(!frozen)
+			frozen = true;
+		return new ScoredQuestionMemory(this, log);
 	}
 	
+	/**
+	 * @throws IllegalStateException if the memory is the baseline of an
+	 * overlay
+	 */
 	@Override
 	public void storeStatement(WordTree<StructureTag> statement) {
+		if(frozen)
+			throw new IllegalStateException("Memory is frozen");
+		// the index and getScore() need the ids of its words
+		statement.internWords();
+		index.add(statement, statements.size());
 		statements.add(statement);
 	}
 	
+	@Override
+	public List<WordTree<StructureTag>> getStatements() {
+		if(baseline == null)
+			return Collections.unmodifiableList(statements);
+		List<WordTree<StructureTag>> base = baseline.getStatements();
+		return new AbstractList<WordTree<StructureTag>>() {
+			@Override
+			public WordTree<StructureTag> get(int i) {
+				if(i < base.size())
+					return base.get(i);
+				return statements.get(i - base.size());
+			}
+
+			@Override
+			public int size() {
+				return base.size() + statements.size();
+			}
+		};
+	}
+	
+	@Override
+	public List<TreePattern.Match> query(TreePattern pattern) {
+		List<TreePattern.Match> matches = new ArrayList<>();
+		query(pattern, matches);
+		return matches;
+	}
+	
+	private void query(TreePattern pattern, List<TreePattern.Match> matches) {
+		if(baseline != null)
+			baseline.query(pattern, matches);
+		int[] candidates = index.candidates(pattern);
+		if(candidates == null) {
+			// only wildcard clauses, so every statement has to be checked
+			for(WordTree<StructureTag> statement : statements)
+				addMatch(pattern, statement, matches);
+		} else {
+			log.trace(() -> "Checking " + candidates.length + " of "
+					+ statements.size() + " statements for " + pattern);
+			for(int id : candidates)
+				addMatch(pattern, statements.get(id), matches);
+		}
+	}
+	
+	private static void addMatch(TreePattern pattern,
+			WordTree<StructureTag> statement, List<TreePattern.Match> matches) {
+		TreePattern.Match match = pattern.match(statement);
+		if(match != null)
+			matches.add(match);
+	}
+	
 	@Override
 	public WordTree<StructureTag> filterQuestion(
 			WordTree<StructureTag> question) {
@@ -39,19 +142,30 @@ public class ScoredQuestionMemory implements QuestionMemory {
 	@Override
 	public WordTree<StructureTag> filterStatement(
 			WordTree<StructureTag> statement) {
-		float highestScore = 0;
-		WordTree<StructureTag> bestMatch = null;
+		BestMatch best = new BestMatch();
+		findBestMatch(statement, best, log);
+		return best.statement;
+	}
+	
+	private static class BestMatch {
+		float score = 0;
+		WordTree<StructureTag> statement = null;
+	}
+	
+	// the baseline's statements are older, so they are tested first
+	private void findBestMatch(WordTree<StructureTag> statement,
+			BestMatch best, Log log) {
+		if(baseline != null)
+			baseline.findBestMatch(statement, best, log);
 		for(WordTree<StructureTag> test : statements) {
-			System.out.println("Testing: " + test.wordListToString());
+			log.trace(() -> "Testing: " + test.wordListToString());
 			float score = getScore(statement, test);
-			if(score >= highestScore && score != 0) {
-				highestScore = score;
-				bestMatch = test;
+			if(score >= best.score && score != 0) {
+				best.score = score;
+				best.statement = test;
 			}
-			logOut.println("Score: " + score);
+			log.trace(() -> "Score: " + score);
 		}
-		
-		return bestMatch;
 	}
 	
 	private float getScore(WordTree<StructureTag> question,
@@ -60,15 +174,31 @@ public class ScoredQuestionMemory implements QuestionMemory {
 		float total = 0;
 		
 		// including IGNOREDs but not including ANSWERs
-		List<String> qLeafWords = new ArrayList<>();
-		List<String> aLeafWords = new ArrayList<>();
+		// leaf words are compared by their SymbolTable ids. Stored answers
+		// always have them. A question word might not, if it was parsed
+		// before it was stored, so it is looked up -- if it still isn't in
+		// the table, it matches nothing
+		int[] qLeafWords = new int[question.numChildren()];
+		int[] aLeafWords = new int[answer.numChildren()];
+		int numQLeaves = 0;
+		int numQUnknown = 0;
+		int numALeaves = 0;
 		List<WordTree<StructureTag>> qTrees = new ArrayList<>();
 		List<WordTree<StructureTag>> aTrees = new ArrayList<>();
 		
 		for(WordTree<StructureTag> child : question.getChildren()) {
 			if(child.isLeaf()) {
-				if(!child.getType().isA(ANSWER))
-					qLeafWords.add(child.getWord());
+				if(child.getType().isA(ANSWER))
+					continue;
+				int id = child.getWordId();
+				if(id == SymbolTable.NONE && child.getWord() != null) {
+					id = SymbolTable.lookup(child.getWord());
+					if(id == SymbolTable.NONE) {
+						numQUnknown++;
+						continue;
+					}
+				}
+				qLeafWords[numQLeaves++] = id;
 			} else {
 				qTrees.add(child);
 			}
@@ -77,21 +207,25 @@ public class ScoredQuestionMemory implements QuestionMemory {
 		for(WordTree<StructureTag> child : answer.getChildren()) {
 			if(child.isLeaf()) {
 				if(!child.getType().isA(ANSWER))
-					aLeafWords.add(child.getWord());
+					aLeafWords[numALeaves++] = child.getWordId();
 			} else {
 				aTrees.add(child);
 			}
 		}
 		
 		//find matching leaves:
-		if(qLeafWords.size() > aLeafWords.size())
-			total += qLeafWords.size();
+		if(numQLeaves + numQUnknown > numALeaves)
+			total += numQLeaves + numQUnknown;
 		else
-			total += aLeafWords.size();
-		for(String w : qLeafWords) {
-			if(aLeafWords.contains(w)) {
-				score++;
-				aLeafWords.remove(w);
+			total += numALeaves;
+		for(int i = 0; i < numQLeaves; i++) {
+			for(int j = 0; j < numALeaves; j++) {
+				if(aLeafWords[j] == qLeafWords[i]) {
+					score++;
+					// each answer word can only be matched once
+					aLeafWords[j] = aLeafWords[--numALeaves];
+					break;
+				}
 			}
 		}
 		
@@ -103,15 +237,15 @@ public class ScoredQuestionMemory implements QuestionMemory {
 			total += aTrees.size();
 		for(WordTree<StructureTag> qTree : qTrees) {
 			float highestScore = 0;
-			WordTree<StructureTag> bestMatch = null;
-			for(WordTree<StructureTag> aTree : aTrees) {
-				float treeScore = getScore(qTree, aTree);
+			int bestMatch = -1;
+			for(int i = 0; i < aTrees.size(); i++) {
+				float treeScore = getScore(qTree, aTrees.get(i));
 				if(treeScore > highestScore) {
 					highestScore = treeScore;
-					bestMatch = aTree;
+					bestMatch = i;
 				}
 			}
-			if(bestMatch != null) {
+			if(bestMatch != -1) {
 				score += highestScore;
 				aTrees.remove(bestMatch);
 			}
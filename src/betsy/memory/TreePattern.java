@@ -0,0 +1,255 @@
+package betsy.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import betsy.grammar.StructureTag;
+import betsy.grammar.WordTree;
+import betsy.vocab.SymbolTable;
+
+/**
+ * A compiled query for the shape of a statement. A pattern is a list of
+ * clauses separated by commas, and a statement matches if every clause does.
+ * Each clause is a path of StructureTags separated by slashes, starting below
+ * the root of the statement, optionally followed by a condition on the leaf
+ * at the end of the path:
+ * <pre>
+ * SUBJECT/NOUN_PHRASE/NOUN=joe   the leaf's word is "joe"
+ * ACTION/VERB_PHRASE/VERB=?      any leaf
+ * ACTION/VERB_PHRASE/VERB=?verb  any leaf, captured as "verb"
+ * ACTION/VERB_PHRASE/OBJECT      the path exists
+ * SUBJECT/&#42;/NOUN=joe             * matches any one tag
+ * </pre>
+ * Patterns are usually run with QuestionMemory.query(), which uses an index
+ * of paths to find the statements that could match.
+ * @author jacob
+ *
+ */
+public class TreePattern {
+
+	enum Condition {
+		EXISTS, WORD, ANY_LEAF, CAPTURE
+	}
+
+	static class Clause {
+		// null steps are wildcards
+		final StructureTag[] steps;
+		final Condition condition;
+		// for WORD
+		final String word;
+		// for CAPTURE
+		final String name;
+		// the word's SymbolTable id, once it is in the table
+		private volatile int wordId = SymbolTable.NONE;
+
+		Clause(StructureTag[] steps, Condition condition, String word,
+				String name) {
+			this.steps = steps;
+			this.condition = condition;
+			this.word = word;
+			this.name = name;
+		}
+
+		/**
+		 * Get the id of the word a WORD clause matches. A word that isn't in
+		 * the SymbolTable yet can't match any stored statement, but it might
+		 * be added after the pattern is compiled, so it is looked up again
+		 * until it is found. Ids never change once they're given out.
+		 * @return the word's id, or SymbolTable.NONE if nobody has used it
+		 */
+		int wordId() {
+			int id = wordId;
+			if(id == SymbolTable.NONE) {
+				id = SymbolTable.lookup(word);
+				wordId = id;
+			}
+			return id;
+		}
+
+		boolean hasWildcard() {
+			for(StructureTag step : steps)
+				if(step == null)
+					return true;
+			return false;
+		}
+	}
+
+	/**
+	 * A statement that matched a pattern, and the leaves it captured.
+	 */
+	public static class Match {
+		private final WordTree<StructureTag> statement;
+		private final Map<String, WordTree<StructureTag>> captures;
+
+		Match(WordTree<StructureTag> statement,
+				Map<String, WordTree<StructureTag>> captures) {
+			this.statement = statement;
+			this.captures = captures;
+		}
+
+		/**
+		 * Get the statement that matched.
+		 * @return the statement
+		 */
+		public WordTree<StructureTag> getStatement() {
+			return statement;
+		}
+
+		/**
+		 * Get a captured leaf.
+		 * @param name the name used in the pattern (without the ?)
+		 * @return the first leaf matched by that clause
+		 */
+		public WordTree<StructureTag> getCapture(String name) {
+			return captures.get(name);
+		}
+
+		/**
+		 * Get all captured leaves.
+		 * @return an unmodifiable map from capture name to leaf
+		 */
+		public Map<String, WordTree<StructureTag>> getCaptures() {
+			return Collections.unmodifiableMap(captures);
+		}
+	}
+
+	private final String source;
+	private final Clause[] clauses;
+
+	private TreePattern(String source, Clause[] clauses) {
+		this.source = source;
+		this.clauses = clauses;
+	}
+
+	/**
+	 * Compile a pattern.
+	 * @param pattern the pattern, in the syntax described above
+	 * @return the compiled pattern
+	 * @throws IllegalArgumentException if the pattern isn't valid
+	 */
+	public static TreePattern compile(String pattern) {
+		List<Clause> clauses = new ArrayList<>();
+		for(String clauseString : pattern.split(",")) {
+			clauseString = clauseString.trim();
+			if(clauseString.isEmpty())
+				throw new IllegalArgumentException("Empty clause in pattern "
+						+ pattern);
+			clauses.add(compileClause(clauseString));
+		}
+		return new TreePattern(pattern, clauses.toArray(new Clause[0]));
+	}
+
+	private static Clause compileClause(String clause) {
+		String path = clause;
+		Condition condition = Condition.EXISTS;
+		String word = null;
+		String name = null;
+
+		int equals = clause.indexOf('=');
+		if(equals != -1) {
+			path = clause.substring(0, equals).trim();
+			String value = clause.substring(equals + 1).trim();
+			if(value.equals("?")) {
+				condition = Condition.ANY_LEAF;
+			} else if(value.startsWith("?")) {
+				condition = Condition.CAPTURE;
+				name = value.substring(1);
+			} else if(!value.isEmpty()) {
+				condition = Condition.WORD;
+				// not interned, so patterns can't grow the table
+				word = value.toLowerCase();
+			} else {
+				throw new IllegalArgumentException("No word after = in "
+						+ clause);
+			}
+		}
+
+		String[] stepStrings = path.split("/");
+		StructureTag[] steps = new StructureTag[stepStrings.length];
+		for(int i = 0; i < steps.length; i++) {
+			String step = stepStrings[i].trim();
+			if(step.equals("*"))
+				continue;
+			try {
+				steps[i] = StructureTag.valueOf(step);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown tag " + step
+						+ " in " + clause);
+			}
+		}
+		return new Clause(steps, condition, word, name);
+	}
+
+	Clause[] getClauses() {
+		return clauses;
+	}
+
+	/**
+	 * Check a statement against the pattern.
+	 * @param statement the root of the statement
+	 * @return the Match, or null if the statement doesn't match
+	 */
+	public Match match(WordTree<StructureTag> statement) {
+		Map<String, WordTree<StructureTag>> captures = null;
+		for(Clause clause : clauses) {
+			WordTree<StructureTag> found = find(statement, clause, 0);
+			if(found == null)
+				return null;
+			if(clause.condition == Condition.CAPTURE) {
+				if(captures == null)
+					captures = new HashMap<>();
+				captures.put(clause.name, found);
+			}
+		}
+		if(captures == null)
+			captures = Collections.emptyMap();
+		return new Match(statement, captures);
+	}
+
+	// find the first node below tree that matches the rest of the clause
+	private static WordTree<StructureTag> find(WordTree<StructureTag> tree,
+			Clause clause, int depth) {
+		StructureTag step = clause.steps[depth];
+		boolean last = depth == clause.steps.length - 1;
+		for(int i = 0; i < tree.numChildren(); i++) {
+			WordTree<StructureTag> child = tree.getChild(i);
+			if(step != null && child.getType() != step)
+				continue;
+			if(last) {
+				if(matchesCondition(child, clause))
+					return child;
+			} else if(!child.isLeaf()) {
+				WordTree<StructureTag> found = find(child, clause, depth + 1);
+				if(found != null)
+					return found;
+			}
+		}
+		return null;
+	}
+
+	private static boolean matchesCondition(WordTree<StructureTag> node,
+			Clause clause) {
+		switch(clause.condition) {
+		case WORD:
+			if(!node.isLeaf())
+				return false;
+			// stored statements' words all have ids, other trees' might not
+			if(node.getWordId() == SymbolTable.NONE)
+				return clause.word.equals(node.getWord());
+			return node.getWordId() == clause.wordId();
+		case ANY_LEAF:
+		case CAPTURE:
+			return node.isLeaf();
+		default:
+			return true;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+}
@@ -0,0 +1,285 @@
+package betsy.server;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import betsy.BetsyEngine;
+import betsy.StatefulBot;
+import betsy.log.Log;
+
+/**
+ * An HTTP server that lets many people talk to their own Bot at once. Every
+ * session has its own Bot, so each conversation has its own context and
+ * memory. Requests and responses are JSON objects:
+ * <pre>
+ * POST   /sessions                 -&gt; {"id": ..., "response": welcome}
+ * POST   /sessions/{id}/messages   {"text": ...} -&gt; {"response": ...}
+ * DELETE /sessions/{id}            -&gt; {"response": goodbye}
+ * GET    /stats                    -&gt; SessionStore.Stats
+ * </pre>
+ * Errors are {"error": ...} with a 4xx or 5xx status. Creating a session when
+ * the limit is reached gets 503, and a request body over MAX_BODY bytes gets
+ * 413. Messages to the same session are handled one at a time; different
+ * sessions run in parallel on the server's Executor.
+ * Sessions are kept in a SessionStore, which hibernates idle ones.
+ * @author jacob
+ *
+ */
+public class ChatServer {
+
+	private static final String CONTEXT = "/sessions";
+	private static final String STATS_CONTEXT = "/stats";
+	/**
+	 * The most bytes a request body can have.
+	 */
+	public static final int MAX_BODY = 64 * 1024;
+
+	static {
+		// without this, every small response waits ~40 ms for a delayed ACK.
+		// It's read once, when the JDK's server first loads.
+		if(System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer server;
+	private final SessionStore sessions;
+	private final int maxSessions;
+	// counts sessions being created too, so the limit can't be overshot
+	private final AtomicInteger numSessions;
+	private final Log log;
+
+	/**
+	 * Create a server. It doesn't accept connections until start() is called.
+	 * @param address the address to listen on
+	 * @param sessions holds the sessions, and makes a new Bot for each one
+	 * @param maxSessions the most sessions that can be open at once,
+	 * including hibernated ones
+	 * @param executor runs each request
+	 * @param log for diagnostic messages
+	 * @throws IOException if the server can't listen on the address
+	 */
+	public ChatServer(InetSocketAddress address, SessionStore sessions,
+			int maxSessions, Executor executor, Log log) throws IOException {
+		this.sessions = sessions;
+		this.maxSessions = maxSessions;
+		this.log = log;
+		numSessions = new AtomicInteger();
+		server = HttpServer.create(address, 0);
+		server.setExecutor(executor);
+		server.createContext(CONTEXT, this::handle);
+		server.createContext(STATS_CONTEXT, this::handleStats);
+	}
+
+	/**
+	 * Start accepting connections.
+	 */
+	public void start() {
+		server.start();
+		log.info(() -> "Listening on " + server.getAddress());
+	}
+
+	/**
+	 * Stop the server, and close every session without a response.
+	 * @param delay the most seconds to wait for requests in progress
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		sessions.clear();
+		numSessions.set(0);
+	}
+
+	/**
+	 * Get the port the server is listening on, useful if it was created with
+	 * port 0.
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Get the number of open sessions.
+	 * @return the number of sessions
+	 */
+	public int numSessions() {
+		return sessions.size();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath()
+					.substring(CONTEXT.length());
+			String method = exchange.getRequestMethod();
+			String[] parts = path.split("/");
+			// parts[0] is the empty string before the first slash
+			if(parts.length <= 1) {
+				if(method.equals("POST"))
+					createSession(exchange);
+				else
+					sendError(exchange, 405, "Use POST to create a session");
+			} else if(parts.length == 2) {
+				if(method.equals("DELETE"))
+					closeSession(exchange, parts[1]);
+				else
+					sendError(exchange, 405, "Use DELETE to close a session");
+			} else if(parts.length == 3 && parts[2].equals("messages")) {
+				if(method.equals("POST"))
+					sendMessage(exchange, parts[1]);
+				else
+					sendError(exchange, 405, "Use POST to send a message");
+			} else {
+				sendError(exchange, 404, "Not found");
+			}
+		} catch (Exception e) {
+			log.warn("Error handling " + exchange.getRequestURI() + ": " + e);
+			sendError(exchange, 500, e.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleStats(HttpExchange exchange) throws IOException {
+		try {
+			if(exchange.getRequestMethod().equals("GET"))
+				send(exchange, 200, sessions.getStats().toJson());
+			else
+				sendError(exchange, 405, "Use GET to get stats");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void createSession(HttpExchange exchange) throws IOException {
+		if(numSessions.incrementAndGet() > maxSessions) {
+			numSessions.decrementAndGet();
+			sendError(exchange, 503, "Too many sessions");
+			return;
+		}
+		String id;
+		String welcome;
+		try {
+			StatefulBot bot = sessions.newBot();
+			welcome = bot.init(true);
+			id = UUID.randomUUID().toString();
+			sessions.add(id, bot);
+		} catch (RuntimeException e) {
+			numSessions.decrementAndGet();
+			throw e;
+		}
+		log.info(() -> "Opened session " + id);
+		send(exchange, 201, Json.object("id", id, "response", welcome));
+	}
+
+	private void sendMessage(HttpExchange exchange, String id)
+			throws IOException {
+		String body = readBody(exchange);
+		if(body == null) {
+			sendError(exchange, 413, "Message is over " + MAX_BODY + " bytes");
+			return;
+		}
+		String text;
+		try {
+			text = Json.parseObject(body).get("text");
+		} catch (IllegalArgumentException e) {
+			sendError(exchange, 400, e.getMessage());
+			return;
+		}
+		if(text == null) {
+			sendError(exchange, 400, "No text");
+			return;
+		}
+		String response = sessions.use(id, bot -> bot.interpret(text, true));
+		if(response == null) {
+			sendError(exchange, 404, "No session " + id);
+			return;
+		}
+		send(exchange, 200, Json.object("response", response));
+	}
+
+	private void closeSession(HttpExchange exchange, String id)
+			throws IOException {
+		String goodbye = sessions.remove(id, bot -> bot.close(true));
+		if(goodbye == null) {
+			sendError(exchange, 404, "No session " + id);
+			return;
+		}
+		numSessions.decrementAndGet();
+		log.info(() -> "Closed session " + id);
+		send(exchange, 200, Json.object("response", goodbye));
+	}
+
+	// returns null if the body is over MAX_BODY bytes, without reading the rest
+	private static String readBody(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while((n = in.read(buffer)) != -1) {
+			if(bytes.size() + n > MAX_BODY)
+				return null;
+			bytes.write(buffer, 0, n);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void sendError(HttpExchange exchange, int status,
+			String message) throws IOException {
+		send(exchange, status, Json.object("error", message));
+	}
+
+	private static void send(HttpExchange exchange, int status, String json)
+			throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type",
+				"application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	/**
+	 * Run a server for Betsy.
+	 * <p>
+	 * Usage: <code>ChatServer [port [maxSessions [threads [resident
+	 * [directory]]]]]</code>
+	 * <br>Defaults are port 8080, 1024 sessions, 4 threads per processor, 64
+	 * sessions kept in memory, and a temporary directory for the rest.
+	 * @param args command line arguments
+	 * @throws IOException if the server can't start
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		int maxSessions = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+		int threads = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors() * 4;
+		int resident = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+		File directory = args.length > 4 ? new File(args[4])
+				: Files.createTempDirectory("betsy-sessions").toFile();
+
+		Log log = Log.getLog(ChatServer.class);
+		log.info("Creating engine...");
+		BetsyEngine engine = new BetsyEngine(log);
+		SessionStore sessions = new SessionStore(
+				() -> engine.newSession(Log.SILENT), resident, directory, log);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ChatServer server = new ChatServer(new InetSocketAddress(port),
+				sessions, maxSessions, executor, log);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop(1);
+			executor.shutdown();
+		}));
+		server.start();
+	}
+}
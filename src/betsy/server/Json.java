@@ -0,0 +1,201 @@
+package betsy.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the chat server: flat objects whose values are strings
+ * or null. Objects that are written can also have numbers. Anything else is
+ * rejected.
+ * @author jacob
+ *
+ */
+public class Json {
+
+	private Json() { }
+
+	/**
+	 * Write a flat object.
+	 * @param keysAndValues alternating String keys and values. Values may be
+	 * Strings, Numbers, or null.
+	 * @return the JSON text
+	 */
+	public static String object(Object... keysAndValues) {
+		StringBuilder sb = new StringBuilder();
+		sb.append('{');
+		for(int i = 0; i < keysAndValues.length; i += 2) {
+			if(i != 0)
+				sb.append(',');
+			quote((String)keysAndValues[i], sb);
+			sb.append(':');
+			Object value = keysAndValues[i + 1];
+			if(value instanceof Number)
+				sb.append(value);
+			else
+				quote((String)value, sb);
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+
+	private static void quote(String s, StringBuilder sb) {
+		if(s == null) {
+			sb.append("null");
+			return;
+		}
+		sb.append('"');
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if(c < 0x20)
+					sb.append(String.format("\\u%04x", (int)c));
+				else
+					sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	/**
+	 * Read a flat object.
+	 * @param json the JSON text
+	 * @return a map from each key to its value
+	 * @throws IllegalArgumentException if the text isn't a flat object of
+	 * strings
+	 */
+	public static Map<String, String> parseObject(String json) {
+		Parser p = new Parser(json);
+		Map<String, String> map = new HashMap<>();
+		p.skipSpace();
+		p.expect('{');
+		p.skipSpace();
+		if(p.peek() == '}') {
+			p.pos++;
+		} else {
+			while(true) {
+				p.skipSpace();
+				String key = p.readString();
+				p.skipSpace();
+				p.expect(':');
+				p.skipSpace();
+				map.put(key, p.readValue());
+				p.skipSpace();
+				if(p.peek() == ',') {
+					p.pos++;
+				} else {
+					p.expect('}');
+					break;
+				}
+			}
+		}
+		p.skipSpace();
+		if(p.pos != json.length())
+			throw new IllegalArgumentException("Text after JSON object");
+		return map;
+	}
+
+	private static class Parser {
+		final String s;
+		int pos = 0;
+
+		Parser(String s) {
+			this.s = s;
+		}
+
+		char peek() {
+			if(pos >= s.length())
+				throw new IllegalArgumentException("Unexpected end of JSON");
+			return s.charAt(pos);
+		}
+
+		void expect(char c) {
+			if(peek() != c)
+				throw new IllegalArgumentException("Expected " + c
+						+ " at " + pos);
+			pos++;
+		}
+
+		void skipSpace() {
+			while(pos < s.length() && Character.isWhitespace(s.charAt(pos)))
+				pos++;
+		}
+
+		String readValue() {
+			if(s.startsWith("null", pos)) {
+				pos += 4;
+				return null;
+			}
+			return readString();
+		}
+
+		String readString() {
+			expect('"');
+			StringBuilder sb = new StringBuilder();
+			while(true) {
+				char c = peek();
+				pos++;
+				if(c == '"')
+					return sb.toString();
+				if(c != '\\') {
+					sb.append(c);
+					continue;
+				}
+				char e = peek();
+				pos++;
+				switch(e) {
+				case '"':
+				case '\\':
+				case '/':
+					sb.append(e);
+					break;
+				case 'b':
+					sb.append('\b');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'u':
+					if(pos + 4 > s.length())
+						throw new IllegalArgumentException(
+								"Unexpected end of JSON");
+					try {
+						sb.append((char)Integer.parseInt(
+								s.substring(pos, pos + 4), 16));
+					} catch (NumberFormatException ex) {
+						throw new IllegalArgumentException("Bad escape at "
+								+ pos);
+					}
+					pos += 4;
+					break;
+				default:
+					throw new IllegalArgumentException("Bad escape at " + pos);
+				}
+			}
+		}
+	}
+}
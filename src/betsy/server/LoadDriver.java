@@ -0,0 +1,187 @@
+package betsy.server;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local load test for the ChatServer. Each client opens a session, sends
+ * every message in a transcript, and closes it, all at the same time as the
+ * other clients. At the end, the throughput and latency of the messages are
+ * reported. A message that fails is counted, and the client goes on to the
+ * next one. If a client fails to open or close its session, the latencies
+ * of the messages it already sent are still counted.
+ * <p>
+ * Usage: <code>LoadDriver [url [clients [rounds [transcript]]]]</code>
+ * <br>Defaults are http://localhost:8080, 8 clients, 1 round through the
+ * transcript, and a few built-in messages.
+ * @author jacob
+ *
+ */
+public class LoadDriver {
+
+	private static final String[] DEFAULT_MESSAGES = {
+		"Hello.", "My name is Joe.", "Joe has a dog.", "The dog is brown.",
+		"What color is the dog?", "What does Joe have?", "Tell me about Joe.",
+		"Goodbye."
+	};
+
+	/**
+	 * What one client has done so far.
+	 */
+	private static class ClientResult {
+		// in nanoseconds, for each message that got a response
+		final long[] latencies;
+		int numLatencies = 0;
+		int failedMessages = 0;
+
+		ClientResult(int maxMessages) {
+			latencies = new long[maxMessages];
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		String url = args.length > 0 ? args[0] : "http://localhost:8080";
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+		List<String> messages = args.length > 3
+				? readTranscript(args[3]) : Arrays.asList(DEFAULT_MESSAGES);
+
+		ClientResult[] results = new ClientResult[clients];
+		boolean[] failedClients = new boolean[clients];
+		Thread[] threads = new Thread[clients];
+		for(int i = 0; i < clients; i++) {
+			int client = i;
+			ClientResult result = new ClientResult(messages.size() * rounds);
+			results[i] = result;
+			threads[i] = new Thread(() -> {
+				try {
+					runClient(url, messages, rounds, result);
+				} catch (IOException e) {
+					System.err.println("Client " + client + ": " + e);
+					failedClients[client] = true;
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		for(Thread t : threads)
+			t.start();
+		for(Thread t : threads)
+			t.join();
+		long time = System.nanoTime() - start;
+
+		int total = 0;
+		int failedMessages = 0;
+		for(ClientResult result : results) {
+			total += result.numLatencies;
+			failedMessages += result.failedMessages;
+		}
+		long[] all = new long[total];
+		int n = 0;
+		for(ClientResult result : results) {
+			System.arraycopy(result.latencies, 0, all, n,
+					result.numLatencies);
+			n += result.numLatencies;
+		}
+		Arrays.sort(all);
+		int failed = 0;
+		for(boolean f : failedClients)
+			if(f)
+				failed++;
+
+		double seconds = time / 1e9;
+		System.out.format("%d messages from %d clients in %.3f s%n", total,
+				clients, seconds);
+		System.out.format("Throughput: %.1f messages/sec%n", total / seconds);
+		if(total != 0) {
+			System.out.format("Latency: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+					percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6,
+					all[total - 1] / 1e6);
+		}
+		if(failedMessages != 0)
+			System.out.println(failedMessages + " message(s) failed");
+		if(failed != 0)
+			System.out.println(failed
+					+ " client(s) couldn't open or close their session");
+	}
+
+	private static List<String> readTranscript(String file)
+			throws IOException {
+		List<String> messages = new ArrayList<>();
+		for(String line : Files.readAllLines(Paths.get(file),
+				StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if(!line.isEmpty() && line.charAt(0) != '#')
+				messages.add(line);
+		}
+		return messages;
+	}
+
+	// adds to the result as it goes, so it's kept if the client fails
+	private static void runClient(String url, List<String> messages,
+			int rounds, ClientResult result) throws IOException {
+		String id = Json.parseObject(
+				request("POST", url + "/sessions", null)).get("id");
+		String messagesUrl = url + "/sessions/" + id + "/messages";
+		for(int r = 0; r < rounds; r++) {
+			for(String message : messages) {
+				long start = System.nanoTime();
+				try {
+					request("POST", messagesUrl,
+							Json.object("text", message));
+				} catch (IOException e) {
+					System.err.println(e);
+					result.failedMessages++;
+					continue;
+				}
+				result.latencies[result.numLatencies++] =
+						System.nanoTime() - start;
+			}
+		}
+		request("DELETE", url + "/sessions/" + id, null);
+	}
+
+	private static String request(String method, String url, String body)
+			throws IOException {
+		HttpURLConnection connection =
+				(HttpURLConnection)new URL(url).openConnection();
+		connection.setRequestMethod(method);
+		if(body != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+			OutputStream out = connection.getOutputStream();
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+			out.close();
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream()
+				: connection.getErrorStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while((n = in.read(buffer)) != -1)
+			bytes.write(buffer, 0, n);
+		in.close();
+		String response = new String(bytes.toByteArray(),
+				StandardCharsets.UTF_8);
+		if(status >= 400) {
+			Map<String, String> error = Json.parseObject(response);
+			throw new IOException(method + " " + url + ": " + status + " "
+					+ error.get("error"));
+		}
+		return response;
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		int i = (int)Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(i, 0)];
+	}
+}
@@ -0,0 +1,357 @@
+package betsy.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import betsy.StatefulBot;
+import betsy.log.Log;
+
+/**
+ * Holds the open sessions of a ChatServer. Only the most recently used
+ * sessions are kept in memory; when there are too many, the least recently
+ * used are hibernated -- their state is saved to a file and the Bot is
+ * dropped. The next time a hibernated session is used, a new Bot is created
+ * and its state is restored, without the caller knowing. If a session can't
+ * be saved, it stays in memory, so the store can go over capacity until
+ * saving works again.
+ * <p>
+ * Each session is only used by one thread at a time. Different sessions can
+ * be used at the same time.
+ * @author jacob
+ *
+ */
+public class SessionStore {
+
+	private static final String SUFFIX = ".session";
+
+	private static class Entry {
+		final String id;
+		// null while hibernated
+		StatefulBot bot;
+		boolean closed = false;
+
+		Entry(String id, StatefulBot bot) {
+			this.id = id;
+			this.bot = bot;
+		}
+	}
+
+	/**
+	 * A snapshot of how much hibernating has happened, and how long it took.
+	 */
+	public static class Stats {
+		public final int sessions;
+		public final int resident;
+		public final long evictions;
+		public final long evictionNanos;
+		public final long maxEvictionNanos;
+		public final long rehydrations;
+		public final long rehydrationNanos;
+		public final long maxRehydrationNanos;
+		public final long bytesWritten;
+
+		Stats(SessionStore store) {
+			sessions = store.entries.size();
+			synchronized(store.resident) {
+				resident = store.resident.size();
+			}
+			evictions = store.evictions.get();
+			evictionNanos = store.evictionNanos.get();
+			maxEvictionNanos = store.maxEvictionNanos.get();
+			rehydrations = store.rehydrations.get();
+			rehydrationNanos = store.rehydrationNanos.get();
+			maxRehydrationNanos = store.maxRehydrationNanos.get();
+			bytesWritten = store.bytesWritten.get();
+		}
+
+		/**
+		 * Get the mean time to hibernate a session.
+		 * @return milliseconds, or 0 if no sessions have been hibernated
+		 */
+		public double meanEvictionMillis() {
+			return evictions == 0 ? 0 : evictionNanos / 1e6 / evictions;
+		}
+
+		/**
+		 * Get the mean time to bring a session back from hibernation.
+		 * @return milliseconds, or 0 if no sessions have been rehydrated
+		 */
+		public double meanRehydrationMillis() {
+			return rehydrations == 0 ? 0
+					: rehydrationNanos / 1e6 / rehydrations;
+		}
+
+		/**
+		 * Get the stats as a JSON object.
+		 * @return the JSON text
+		 */
+		public String toJson() {
+			return Json.object("sessions", sessions, "resident", resident,
+					"evictions", evictions,
+					"meanEvictionMillis", meanEvictionMillis(),
+					"maxEvictionMillis", maxEvictionNanos / 1e6,
+					"rehydrations", rehydrations,
+					"meanRehydrationMillis", meanRehydrationMillis(),
+					"maxRehydrationMillis", maxRehydrationNanos / 1e6,
+					"bytesWritten", bytesWritten);
+		}
+	}
+
+	private final Supplier<? extends StatefulBot> botFactory;
+	private final int capacity;
+	private final File directory;
+	private final Log log;
+
+	private final Map<String, Entry> entries;
+	// the sessions in memory, least recently used first. Locked when used.
+	private final LinkedHashMap<String, Entry> resident;
+
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong evictionNanos = new AtomicLong();
+	private final AtomicLong maxEvictionNanos = new AtomicLong();
+	private final AtomicLong rehydrations = new AtomicLong();
+	private final AtomicLong rehydrationNanos = new AtomicLong();
+	private final AtomicLong maxRehydrationNanos = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	/**
+	 * Create an empty SessionStore.
+	 * @param botFactory makes the Bots that hibernated sessions are restored
+	 * into
+	 * @param capacity the most sessions to keep in memory
+	 * @param directory where to save hibernated sessions. It is created if it
+	 * doesn't exist.
+	 * @param log for diagnostic messages
+	 * @throws IOException if the directory can't be created
+	 */
+	public SessionStore(Supplier<? extends StatefulBot> botFactory,
+			int capacity, File directory, Log log) throws IOException {
+		this.botFactory = botFactory;
+		this.capacity = capacity;
+		this.directory = directory;
+		this.log = log;
+		entries = new ConcurrentHashMap<>();
+		resident = new LinkedHashMap<>(16, 0.75f, true);
+		Files.createDirectories(directory.toPath());
+	}
+
+	/**
+	 * Make a new Bot for a session, with the store's factory. It isn't part
+	 * of the store until it's added.
+	 * @return a new Bot
+	 */
+	public StatefulBot newBot() {
+		return botFactory.get();
+	}
+
+	/**
+	 * Add a session.
+	 * @param id the session's id, which must not already be in use
+	 * @param bot the session's Bot
+	 */
+	public void add(String id, StatefulBot bot) {
+		Entry entry = new Entry(id, bot);
+		entries.put(id, entry);
+		touch(entry);
+		evict();
+	}
+
+	/**
+	 * Use a session's Bot, restoring it first if it is hibernated. No other
+	 * thread uses the Bot until the action finishes.
+	 * @param id the session's id
+	 * @param action what to do with the Bot. It must not return null.
+	 * @return what the action returned, or null if there's no such session
+	 * @throws IOException if a hibernated session couldn't be restored
+	 */
+	public <R> R use(String id, Function<StatefulBot, R> action)
+			throws IOException {
+		Entry entry = entries.get(id);
+		if(entry == null)
+			return null;
+		try {
+			synchronized(entry) {
+				if(entry.closed)
+					return null;
+				try {
+					if(entry.bot == null)
+						rehydrate(entry);
+					return action.apply(entry.bot);
+				} finally {
+					// even if the action threw, the entry may have a Bot that
+					// evict() has to be able to find. While the entry is
+					// locked, so a session remove() has closed isn't put back.
+					touch(entry);
+				}
+			}
+		} finally {
+			evict();
+		}
+	}
+
+	/**
+	 * Remove a session, and use its Bot one last time.
+	 * @param id the session's id
+	 * @param action what to do with the Bot, like close it. It must not
+	 * return null.
+	 * @return what the action returned, or null if there's no such session
+	 * @throws IOException if a hibernated session couldn't be restored
+	 */
+	public <R> R remove(String id, Function<StatefulBot, R> action)
+			throws IOException {
+		Entry entry = entries.remove(id);
+		if(entry == null)
+			return null;
+		synchronized(entry) {
+			if(entry.closed)
+				return null;
+			entry.closed = true;
+			synchronized(resident) {
+				resident.remove(id);
+			}
+			try {
+				if(entry.bot == null)
+					rehydrate(entry);
+				return action.apply(entry.bot);
+			} finally {
+				entry.bot = null;
+				fileFor(id).delete();
+			}
+		}
+	}
+
+	/**
+	 * Remove every session, without using their Bots.
+	 */
+	public void clear() {
+		for(String id : entries.keySet()) {
+			Entry entry = entries.remove(id);
+			if(entry == null)
+				continue;
+			synchronized(entry) {
+				entry.closed = true;
+				entry.bot = null;
+				fileFor(id).delete();
+			}
+		}
+		synchronized(resident) {
+			resident.clear();
+		}
+	}
+
+	/**
+	 * Get the number of sessions, including hibernated ones.
+	 * @return the number of sessions
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Get the current stats.
+	 * @return a snapshot of the stats
+	 */
+	public Stats getStats() {
+		return new Stats(this);
+	}
+
+	private void touch(Entry entry) {
+		synchronized(resident) {
+			resident.put(entry.id, entry);
+		}
+	}
+
+	private void evict() {
+		while(true) {
+			Entry victim;
+			synchronized(resident) {
+				if(resident.size() <= capacity)
+					return;
+				Iterator<Entry> it = resident.values().iterator();
+				victim = it.next();
+				it.remove();
+			}
+			// the victim's lock is taken without holding any other, so two
+			// threads evicting each other's sessions can't deadlock
+			if(!hibernate(victim))
+				// the disk is probably full -- let the store stay over
+				// capacity rather than try every session now
+				return;
+		}
+	}
+
+	// returns false if the session should have been hibernated but couldn't
+	// be. It is still in memory, and resident again.
+	private boolean hibernate(Entry entry) {
+		synchronized(entry) {
+			if(entry.closed || entry.bot == null)
+				return true;
+			synchronized(resident) {
+				// used again since it was picked
+				if(resident.containsKey(entry.id))
+					return true;
+			}
+			long start = System.nanoTime();
+			byte[] state = entry.bot.saveState();
+			File file = fileFor(entry.id);
+			File temp = new File(directory, entry.id + SUFFIX + ".tmp");
+			try {
+				Files.write(temp.toPath(), state);
+				Files.move(temp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				log.warn("Couldn't hibernate session " + entry.id + ": " + e);
+				temp.delete();
+				// it still has its Bot, so it must stay where evict() and
+				// clear() can find it
+				touch(entry);
+				return false;
+			}
+			entry.bot = null;
+			long time = System.nanoTime() - start;
+			evictions.incrementAndGet();
+			evictionNanos.addAndGet(time);
+			updateMax(maxEvictionNanos, time);
+			bytesWritten.addAndGet(state.length);
+			log.debug(() -> "Hibernated session " + entry.id + ", "
+					+ state.length + " bytes");
+			return true;
+		}
+	}
+
+	// must hold the entry's lock
+	private void rehydrate(Entry entry) throws IOException {
+		long start = System.nanoTime();
+		File file = fileFor(entry.id);
+		byte[] state = Files.readAllBytes(file.toPath());
+		StatefulBot bot = botFactory.get();
+		bot.restoreState(state);
+		entry.bot = bot;
+		file.delete();
+		long time = System.nanoTime() - start;
+		rehydrations.incrementAndGet();
+		rehydrationNanos.addAndGet(time);
+		updateMax(maxRehydrationNanos, time);
+		log.debug(() -> "Rehydrated session " + entry.id);
+	}
+
+	private File fileFor(String id) {
+		return new File(directory, id + SUFFIX);
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current;
+		while(value > (current = max.get()))
+			if(max.compareAndSet(current, value))
+				return;
+	}
+}
@@ -0,0 +1,7 @@
+/**
+ * Has the ChatServer, which lets many people talk to Betsy at once over HTTP,
+ * and a LoadDriver to measure how well it keeps up.
+ * @author jacob
+ *
+ */
+package betsy.server;
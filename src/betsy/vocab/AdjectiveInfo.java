@@ -1,6 +1,6 @@
 package betsy.vocab;
 
-import net.sf.extjwnl.data.IndexWord;
+import net.sf.extjwnl.data.POS;
 
 /**
  * A WordInfo describing an adjective.
@@ -22,8 +22,8 @@ public class AdjectiveInfo extends GenericWordInfo {
 	}
 	private final AdjectiveType type;
 	
-	public AdjectiveInfo(String word, IndexWord index, AdjectiveType type) {
-		super(word, index);
+	public AdjectiveInfo(String word, String baseForm, AdjectiveType type) {
+		super(word, baseForm, POS.ADJECTIVE);
 		this.type = type;
 	}
 	
@@ -1,6 +1,6 @@
 package betsy.vocab;
 
-import net.sf.extjwnl.data.IndexWord;
+import net.sf.extjwnl.data.POS;
 import betsy.vocab.AdjectiveInfo.AdjectiveType;
 
 /**
@@ -12,8 +12,8 @@ public class AdverbInfo extends GenericWordInfo {
 	
 	private final AdjectiveType type;
 	
-	public AdverbInfo(String word, IndexWord index, AdjectiveType type) {
-		super(word, index);
+	public AdverbInfo(String word, String baseForm, AdjectiveType type) {
+		super(word, baseForm, POS.ADVERB);
 		this.type = type;
 	}
 	
@@ -0,0 +1,223 @@
+package betsy.vocab;
+
+/**
+ * The closed-class words that Betsy treats specially: personal, possessive
+ * and reflexive pronouns, and question ("WH") words. Each word has its swapped,
+ * possessor, possessive and subject forms worked out ahead of time, so Vocab
+ * doesn't have to compare strings to find them. Words are found with
+ * lookup(), which uses a perfect hash table built when the class is loaded.
+ * These words are never looked up in WordNet.
+ * @author jacob
+ *
+ */
+public enum ClosedClassWord {
+	// null means the same as the word (for possessive: the word + "'s")
+	//   word          swap           possessor  possessive subject wh
+	I(   "i",          "you",         null,      "my",      null,   false),
+	ME(  "me",         "you",         null,      "my",      "I",    false),
+	MY(  "my",         null,          "you",     null,      null,   false),
+	MINE("mine",       "yours",       null,      null,      null,   false),
+	MYSELF("myself",   "yourself",    null,      null,      null,   false),
+	YOU( "you",        "me",          null,      "your",    null,   false),
+	YOUR("your",       null,          "me",      null,      null,   false),
+	YOURS("yours",     "mine",        null,      null,      null,   false),
+	YOURSELF("yourself", "myself",    null,      null,      null,   false),
+	YOURSELVES("yourselves", "ourselves", null,  null,      null,   false),
+	HE(  "he",         "him",         null,      "his",     null,   false,
+			Referent.HIM),
+	HIM( "him",        null,          null,      "his",     "he",   false,
+			Referent.HIM),
+	HIS( "his",        null,          "him",     null,      null,   false),
+	HIMSELF("himself", null,          null,      null,      null,   false,
+			Referent.HIM),
+	SHE( "she",        "her",         null,      "her",     null,   false,
+			Referent.HER),
+	HER( "her",        null,          "her",     "her",     "she",  false,
+			Referent.HER),
+	HERS("hers",       null,          null,      null,      null,   false),
+	HERSELF("herself", null,          null,      null,      null,   false,
+			Referent.HER),
+	IT(  "it",         null,          null,      "its",     null,   false,
+			Referent.IT),
+	ITS( "its",        null,          "it",      null,      null,   false),
+	ITSELF("itself",   null,          null,      null,      null,   false,
+			Referent.IT),
+	THAT("that",       null,          null,      null,      null,   false,
+			Referent.IT),
+	WE(  "we",         null,          null,      null,      null,   false),
+	US(  "us",         null,          null,      "our",     null,   false),
+	OUR( "our",        null,          "us",      null,      null,   false),
+	OURS("ours",       null,          null,      null,      null,   false),
+	OURSELVES("ourselves", null,      null,      null,      null,   false),
+	THEY("they",       null,          null,      "their",   null,   false,
+			Referent.THEM),
+	THEM("them",       null,          null,      "their",   "they", false,
+			Referent.THEM),
+	THEIR("their",     null,          "them",    null,      null,   false),
+	THEIRS("theirs",   null,          null,      null,      null,   false),
+	THOSE("those",     null,          null,      null,      null,   false,
+			Referent.THEM),
+	THEMSELVES("themselves", null,    null,      null,      null,   false,
+			Referent.THEM),
+	WHO( "who",        null,          null,      "whose",   null,   true),
+	WHOM("whom",       null,          null,      null,      null,   true),
+	WHOSE("whose",     null,          "who",     null,      null,   true),
+	WHAT("what",       null,          null,      null,      null,   true),
+	WHICH("which",     null,          null,      null,      null,   true),
+	WHEN("when",       null,          null,      null,      null,   true),
+	WHERE("where",     null,          null,      null,      null,   true),
+	WHY( "why",        null,          null,      null,      null,   true),
+	HOW( "how",        null,          null,      null,      null,   true),
+	;
+
+	/**
+	 * The kind of noun phrase a pronoun refers to, used by Context.
+	 */
+	public enum Referent {
+		NONE, HIM, HER, IT, THEM
+	}
+
+	private final String word;
+	private final String swapped;
+	private final String possessor;
+	private final String possessive;
+	private final String subject;
+	private final boolean whWord;
+	private final Referent referent;
+
+	ClosedClassWord(String word, String swapped, String possessor,
+			String possessive, String subject, boolean whWord) {
+		this(word, swapped, possessor, possessive, subject, whWord,
+				Referent.NONE);
+	}
+
+	ClosedClassWord(String word, String swapped, String possessor,
+			String possessive, String subject, boolean whWord,
+			Referent referent) {
+		this.word = word;
+		this.swapped = swapped != null ? swapped : word;
+		this.possessor = possessor != null ? possessor : word;
+		this.possessive = possessive != null ? possessive : word + "'s";
+		this.subject = subject != null ? subject : word;
+		this.whWord = whWord;
+		this.referent = referent;
+	}
+
+	/**
+	 * Get the word, in lower case.
+	 * @return the word
+	 */
+	public String getWord() {
+		return word;
+	}
+
+	/**
+	 * Get the word as seen from the other side of the conversation, in the
+	 * canonical form used by Betsy. See Vocab.swapPronoun().
+	 * @return the swapped word
+	 */
+	public String getSwapped() {
+		return swapped;
+	}
+
+	/**
+	 * Get the noun that owns something, if this is a possessive word. See
+	 * Vocab.pronounPossessor().
+	 * @return the possessor noun, or the word itself
+	 */
+	public String getPossessor() {
+		return possessor;
+	}
+
+	/**
+	 * Get the possessive form of the word. See Vocab.makePossessive().
+	 * @return the possessive form
+	 */
+	public String getPossessive() {
+		return possessive;
+	}
+
+	/**
+	 * Get the form of the word used in the subject of a sentence. See
+	 * Vocab.makePronounSubject().
+	 * @return the subject form
+	 */
+	public String getSubject() {
+		return subject;
+	}
+
+	/**
+	 * Check if this is a "WH" question word.
+	 * @return true if it is a question word
+	 */
+	public boolean isWhWord() {
+		return whWord;
+	}
+
+	/**
+	 * Get the kind of noun phrase this pronoun refers to.
+	 * @return the Referent, NONE if it isn't a referring pronoun
+	 */
+	public Referent getReferent() {
+		return referent;
+	}
+
+	private static final ClosedClassWord[] table;
+	private static final int shift;
+	private static final int multiplier;
+
+	// find a multiplier that gives every word its own slot
+	static {
+		ClosedClassWord[] words = values();
+		int bits = 32 - Integer.numberOfLeadingZeros(words.length * 2 - 1);
+		int m = 0x9e3779b1;
+		int attempts = 0;
+		ClosedClassWord[] t;
+		while((t = buildTable(words, bits, m)) == null) {
+			m += 0x3c6ef372;
+			if(++attempts == 10000) {
+				bits++;
+				attempts = 0;
+			}
+		}
+		table = t;
+		shift = 32 - bits;
+		multiplier = m;
+	}
+
+	private static ClosedClassWord[] buildTable(ClosedClassWord[] words,
+			int bits, int m) {
+		ClosedClassWord[] t = new ClosedClassWord[1 << bits];
+		for(ClosedClassWord w : words) {
+			int i = (hash(w.word) * m) >>> (32 - bits);
+			if(t[i] != null)
+				return null;
+			t[i] = w;
+		}
+		return t;
+	}
+
+	// case-insensitive string hash
+	private static int hash(String s) {
+		int h = 0;
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+			h = 31 * h + c;
+		}
+		return h;
+	}
+
+	/**
+	 * Find the closed-class word matching a string, ignoring case.
+	 * @param s the word to look up
+	 * @return the ClosedClassWord, or null if s isn't one
+	 */
+	public static ClosedClassWord lookup(String s) {
+		ClosedClassWord w = table[(hash(s) * multiplier) >>> shift];
+		if(w != null && w.word.equalsIgnoreCase(s))
+			return w;
+		return null;
+	}
+}
@@ -1,22 +1,26 @@
 package betsy.vocab;
 
+import net.sf.extjwnl.JWNLException;
 import net.sf.extjwnl.data.IndexWord;
 import net.sf.extjwnl.data.POS;
 
 /**
- * A generic implementation of WordInfo. Keeps track of the word and its
- * IndexWord, which it uses for other word properties.
+ * A generic implementation of WordInfo. Keeps track of the word, its base
+ * form and its part of speech. The IndexWord is only looked up if it is
+ * asked for.
  * @author jacob
  *
  */
 public abstract class GenericWordInfo implements WordInfo{
 	
 	private String word;
-	private IndexWord index;
+	private String baseForm;
+	private POS pos;
 	
-	public GenericWordInfo(String word, IndexWord index) {
+	public GenericWordInfo(String word, String baseForm, POS pos) {
 		this.word = word;
-		this.index = index;
+		this.baseForm = baseForm;
+		this.pos = pos;
 	}
 	
 	@Override
@@ -26,28 +30,39 @@ public abstract class GenericWordInfo implements WordInfo{
 	
 	@Override
 	public String getBaseForm() {
-		if(index != null)
-			return index.getLemma();
+		if(baseForm != null)
+			return baseForm;
 		else
 			return word;
 	}
 	
 	@Override
 	public IndexWord getIndex() {
-		return index;
+		// closed-class words are never looked up in WordNet
+		if(baseForm == null || ClosedClassWord.lookup(baseForm) != null)
+			return null;
+		try {
+			return WordNetCache.lookupIndexWord(Vocab.getDictionary(), pos,
+					baseForm);
+		} catch (JWNLException e) {
+			e.printStackTrace();
+			return null;
+		}
 	}
 	
 	@Override
 	public POS getPOS() {
-		return index.getPOS();
+		return pos;
 	}
 	
 	@Override
 	public String toString() {
-		if(index != null)
-			return index.toString();
-		else
+		// only what the lexicon image already gave us, so that logging a word
+		// doesn't load WordNet
+		if(baseForm == null || pos == null)
 			return word;
+		else
+			return baseForm + " (" + pos.getLabel() + ")";
 	}
 	
 }
@@ -0,0 +1,275 @@
+package betsy.vocab;
+
+import java.util.Map;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+
+/**
+ * Makes the inflected forms of words: verb tenses, plural nouns, and
+ * comparative and superlative adjectives. Every form is worked out once and
+ * cached, so constructing a sentence doesn't build the same strings over and
+ * over. All of the tenses of a verb are made together the first time the verb
+ * is conjugated. Irregular past tenses come from Vocab.pastTenseVerbs, and the
+ * verbs in that list are conjugated ahead of time by precompute().
+ * The caches are bounded and thread-safe.
+ * @author jacob
+ *
+ */
+public class Inflector {
+	
+	/**
+	 * The maximum number of words cached for each kind of inflection.
+	 */
+	public static final int CAPACITY = 4096;
+	
+	/**
+	 * the past, the present, and the future walked into a bar.
+	 * it was tense.
+	 */
+	private enum TenseTime {
+		PAST, PRESENT, FUTURE, GENERIC
+	}
+	
+	private enum TenseFrame {
+		SIMPLE, PERFECT, CONTINUOUS, PERFECT_CONTINUOUS
+	}
+	
+	private static final TenseTime[] TIMES = TenseTime.values();
+	private static final TenseFrame[] FRAMES = TenseFrame.values();
+	
+	// every tense of a verb, indexed by time * FRAMES.length + frame
+	private static final Map<String, String[]> verbForms = newCache();
+	private static final Map<String, String> plurals = newCache();
+	private static final Map<String, String> comparatives = newCache();
+	private static final Map<String, String> superlatives = newCache();
+	
+	private static <V> Map<String, V> newCache() {
+		return new ConcurrentLinkedHashMap.Builder<String, V>()
+				.maximumWeightedCapacity(CAPACITY)
+				.build();
+	}
+	
+	/**
+	 * Conjugate every verb in Vocab.pastTenseVerbs, so the most common verbs
+	 * never have to be conjugated during a conversation.
+	 */
+	public static void precompute() {
+		for(String verb : Vocab.pastTenseVerbs.keySet())
+			getVerbForms(verb);
+	}
+	
+	/**
+	 * Change a verb to be in a given tense. See Vocab.conjugateVerb().
+	 * @param verb the verb in its base form (present, simple tense)
+	 * @param tenseTime the time of the verb tense, or null for GENERIC
+	 * @param tenseFrame the frame of the verb tense, or null for SIMPLE
+	 * @return the verb word, in the given tense
+	 */
+	public static String conjugateVerb(String verb,
+			String tenseTime, String tenseFrame) {
+		int time = timeIndex(tenseTime);
+		int frame = frameIndex(tenseFrame);
+		return getVerbForms(verb)[time * FRAMES.length + frame];
+	}
+	
+	/**
+	 * Make a singular noun plural. See Vocab.makePlural().
+	 * @param noun the singular form of the noun
+	 * @return the noun's plural form
+	 */
+	public static String makePlural(String noun) {
+		String plural = plurals.get(noun);
+		if(plural == null) {
+			plural = pluralize(noun);
+			plurals.put(noun, plural);
+		}
+		return plural;
+	}
+	
+	/**
+	 * Make an adjective or adverb comparative. See Vocab.makeComparative().
+	 * @param adjective the adjective or adverb to make comparative
+	 * @return the comparative form of the word
+	 */
+	public static String makeComparative(String adjective) {
+		String comparative = comparatives.get(adjective);
+		if(comparative == null) {
+			//TODO: more intelligent conjugations
+			//see: http://grammar.yourdictionary.com/parts-of-speech/adjectives/what-is-a-superlative-adjective.html
+			comparative = "more " + adjective;
+			comparatives.put(adjective, comparative);
+		}
+		return comparative;
+	}
+	
+	/**
+	 * Make an adjective or adverb superlative. See Vocab.makeSuperlative().
+	 * @param adjective the adjective or adverb to make superlative
+	 * @return the superlative form of the word
+	 */
+	public static String makeSuperlative(String adjective) {
+		String superlative = superlatives.get(adjective);
+		if(superlative == null) {
+			//TODO: more intelligent conjugations
+			superlative = "most " + adjective;
+			superlatives.put(adjective, superlative);
+		}
+		return superlative;
+	}
+	
+	// tense leaves only ever have a few values, so this is cheaper than
+	// Enum.valueOf()
+	private static int timeIndex(String tenseTime) {
+		if(tenseTime == null || tenseTime.isEmpty())
+			return TenseTime.GENERIC.ordinal();
+		switch(tenseTime) {
+		case "PAST":
+			return TenseTime.PAST.ordinal();
+		case "PRESENT":
+			return TenseTime.PRESENT.ordinal();
+		case "FUTURE":
+			return TenseTime.FUTURE.ordinal();
+		default:
+			return TenseTime.valueOf(tenseTime).ordinal();
+		}
+	}
+	
+	private static int frameIndex(String tenseFrame) {
+		if(tenseFrame == null || tenseFrame.isEmpty())
+			return TenseFrame.SIMPLE.ordinal();
+		switch(tenseFrame) {
+		case "SIMPLE":
+			return TenseFrame.SIMPLE.ordinal();
+		case "PERFECT":
+			return TenseFrame.PERFECT.ordinal();
+		case "CONTINUOUS":
+			return TenseFrame.CONTINUOUS.ordinal();
+		default:
+			return TenseFrame.valueOf(tenseFrame).ordinal();
+		}
+	}
+	
+	private static String[] getVerbForms(String verb) {
+		String[] forms = verbForms.get(verb);
+		if(forms == null) {
+			forms = new String[TIMES.length * FRAMES.length];
+			for(TenseTime time : TIMES)
+				for(TenseFrame frame : FRAMES)
+					forms[time.ordinal() * FRAMES.length + frame.ordinal()]
+							= conjugate(verb, time, frame);
+			verbForms.put(verb, forms);
+		}
+		return forms;
+	}
+	
+	@SuppressWarnings("incomplete-switch")
+	private static String conjugate(String verb,
+			TenseTime time, TenseFrame frame) {
+		//TODO: recognize different pronouns, fix conjugations
+		
+		boolean isBe = verb.equals("be");
+		
+		switch(frame) {
+		case SIMPLE:
+			if(isBe) {
+				switch(time) {
+				case PAST:
+					verb = "was";
+					break;
+				case PRESENT:
+					verb = "is";
+					break;
+				case FUTURE:
+					verb = "will be";
+					break;
+				}
+			} else {
+				switch(time) {
+				case PAST:
+					verb = verbAddEd(verb);
+					break;
+				case PRESENT:
+					verb = verb + "s";
+					break;
+				case FUTURE:
+					verb = "will " + verb;
+					break;
+				}
+			}
+			break;
+		case CONTINUOUS:
+			verb = verb + "ing";
+			switch(time) {
+			case PAST:
+				verb = "was " + verb;
+				break;
+			case PRESENT:
+				verb = "is " + verb;
+				break;
+			case FUTURE:
+				verb = "will be " + verb;
+				break;
+			}
+			break;
+		case PERFECT:
+			if(isBe)
+				verb = "been";
+			else
+				verb = verbAddEd(verb);
+			switch(time) {
+			case PAST:
+				verb = "had " + verb;
+				break;
+			case PRESENT:
+				verb = "has " + verb;
+				break;
+			case FUTURE:
+				verb = "will have " + verb;
+				break;
+			}
+			break;
+		case PERFECT_CONTINUOUS:
+			verb = verb + "ing";
+			switch(time) {
+			case PAST:
+				verb = "had been " + verb;
+				break;
+			case PRESENT:
+				verb = "has been " + verb;
+				break;
+			case FUTURE:
+				verb = "will have been " + verb;
+				break;
+			}
+			break;
+		} // end of frame switch
+		
+		return verb;
+	}
+	
+	private static String verbAddEd(String verb) {
+		// special cases are common with past tense verbs
+		// http://www.linguasorb.com/english/verbs/most-common-verbs/
+		if(Vocab.pastTenseVerbs.containsKey(verb))
+			return Vocab.pastTenseVerbs.get(verb);
+		
+		if(verb.endsWith("e"))
+			return verb + "d";
+		if(verb.endsWith("y"))
+			return verb.substring(0, verb.length() - 1) + "ied";
+		return verb + "ed";
+	}
+	
+	private static String pluralize(String noun) {
+		// http://www.edufind.com/english-grammar/plural-nouns/
+		int len = noun.length();
+		if(noun.endsWith("s") || noun.endsWith("x") || noun.endsWith("z")
+				|| noun.endsWith("ch") || noun.endsWith("sh"))
+			return noun + "es";
+		else if(noun.charAt(len - 1) == 'y'
+				&& Vocab.isConsonant(noun.charAt(len - 2)))
+			return noun.substring(0, len - 1) + "ies";
+		else
+			return noun + "s";
+	}
+}
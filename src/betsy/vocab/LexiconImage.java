@@ -0,0 +1,355 @@
+package betsy.vocab;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import net.sf.extjwnl.data.Exc;
+import net.sf.extjwnl.data.IndexWord;
+import net.sf.extjwnl.data.POS;
+import net.sf.extjwnl.dictionary.Dictionary;
+
+/**
+ * A compact, read-only copy of the parts of WordNet that Betsy uses: the
+ * lemma of every word in each part of speech, and the exception lists for
+ * irregular forms. The image is built ahead of time by running this class's
+ * main method, and is memory-mapped at runtime, so looking up the base form of
+ * a word is a binary search with no dictionary to load.
+ * <p>
+ * File layout (all integers are big-endian):
+ * <pre>
+ * int magic, int version
+ * for each POS (NOUN, VERB, ADJECTIVE, ADVERB):
+ *   int count, int[count] record offsets (sorted by key)
+ * records:
+ *   short keyLength, UTF-8 key, byte isLemma, byte numExceptions,
+ *   numExceptions * (short length, UTF-8 base form)
+ * </pre>
+ * @author jacob
+ *
+ */
+public class LexiconImage {
+
+	/**
+	 * The file used if the betsy.lexicon system property isn't set.
+	 */
+	public static final String DEFAULT_FILE = "betsyLexicon.bin";
+
+	private static final int MAGIC = 0x424c4558; // "BLEX"
+	private static final int VERSION = 1;
+
+	private static final POS[] POS_ORDER = {
+		POS.NOUN, POS.VERB, POS.ADJECTIVE, POS.ADVERB
+	};
+
+	// suffix rules used by WordNet's morphological processor, in order.
+	// every even index is a suffix, and the following index is its
+	// replacement
+	private static final String[] NOUN_SUFFIXES = {
+		"s", "", "ses", "s", "xes", "x", "zes", "z", "ches", "ch",
+		"shes", "sh", "men", "man", "ies", "y"
+	};
+	private static final String[] VERB_SUFFIXES = {
+		"s", "", "ies", "y", "es", "e", "es", "", "ed", "e", "ed", "",
+		"ing", "e", "ing", ""
+	};
+	private static final String[] ADJECTIVE_SUFFIXES = {
+		"er", "", "est", "", "er", "e", "est", "e"
+	};
+	private static final String[] ADVERB_SUFFIXES = { };
+
+	private final ByteBuffer buffer;
+	// start of the offset table for each POS, indexed like POS_ORDER
+	private final int[] tableStarts;
+	private final int[] tableSizes;
+
+	private LexiconImage(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if(buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a lexicon image");
+		if(buffer.getInt(4) != VERSION)
+			throw new IOException("Unsupported lexicon image version "
+					+ buffer.getInt(4));
+		tableStarts = new int[POS_ORDER.length];
+		tableSizes = new int[POS_ORDER.length];
+		int position = 8;
+		for(int i = 0; i < POS_ORDER.length; i++) {
+			tableSizes[i] = buffer.getInt(position);
+			tableStarts[i] = position + 4;
+			position = tableStarts[i] + tableSizes[i] * 4;
+		}
+	}
+
+	/**
+	 * Memory-map a lexicon image file.
+	 * @param path the image file
+	 * @return the image
+	 * @throws IOException if the file can't be read or isn't a lexicon image
+	 */
+	public static LexiconImage open(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new LexiconImage(buffer);
+		}
+	}
+
+	/**
+	 * Open the image named by the betsy.lexicon system property, or
+	 * DEFAULT_FILE in the working directory.
+	 * @return the image, or null if there isn't one
+	 * @throws IOException if the file exists but can't be read
+	 */
+	public static LexiconImage openDefault() throws IOException {
+		Path path = Paths.get(System.getProperty("betsy.lexicon",
+				DEFAULT_FILE));
+		if(!Files.isRegularFile(path))
+			return null;
+		return open(path);
+	}
+
+	/**
+	 * Check if the image can give a definite answer for a word. Words with
+	 * spaces or hyphens are split up by WordNet, which the image doesn't do,
+	 * so they have to go to the dictionary.
+	 * @param word the word to check
+	 * @return true if lookupBaseForm() can be trusted for this word
+	 */
+	public boolean covers(String word) {
+		return word.indexOf(' ') == -1 && word.indexOf('-') == -1
+				&& word.indexOf('_') == -1;
+	}
+
+	/**
+	 * Find the base form of a word the same way WordNet does: the word itself
+	 * if it is a lemma, then its exceptions, then each suffix rule.
+	 * @param pos the part of speech of the word
+	 * @param word the word, in any form
+	 * @return the lemma of the word, or null if WordNet doesn't have it
+	 */
+	public String lookupBaseForm(POS pos, String word) {
+		int table = tableIndex(pos);
+		String key = word.toLowerCase();
+
+		int record = find(table, key);
+		if(record != -1 && isLemma(record))
+			return key;
+		String base = exceptionLemma(table, record);
+		if(base != null)
+			return base;
+
+		String[] suffixes = suffixes(pos);
+		for(int i = 0; i < suffixes.length; i += 2) {
+			if(!key.endsWith(suffixes[i]))
+				continue;
+			String stem = key.substring(0, key.length() - suffixes[i].length())
+					+ suffixes[i + 1];
+			if(stem.isEmpty())
+				continue;
+			int stemRecord = find(table, stem);
+			if(stemRecord == -1)
+				continue;
+			if(isLemma(stemRecord))
+				return stem;
+			base = exceptionLemma(table, stemRecord);
+			if(base != null)
+				return base;
+		}
+		return null;
+	}
+
+	private static int tableIndex(POS pos) {
+		for(int i = 0; i < POS_ORDER.length; i++)
+			if(POS_ORDER[i] == pos)
+				return i;
+		throw new IllegalArgumentException("Unknown POS " + pos);
+	}
+
+	private static String[] suffixes(POS pos) {
+		if(pos == POS.NOUN)
+			return NOUN_SUFFIXES;
+		if(pos == POS.VERB)
+			return VERB_SUFFIXES;
+		if(pos == POS.ADJECTIVE)
+			return ADJECTIVE_SUFFIXES;
+		return ADVERB_SUFFIXES;
+	}
+
+	private boolean isLemma(int record) {
+		int keyLength = buffer.getShort(record);
+		return buffer.get(record + 2 + keyLength) != 0;
+	}
+
+	// the first exception of the record that is itself a lemma
+	private String exceptionLemma(int table, int record) {
+		if(record == -1)
+			return null;
+		int position = record + 2 + buffer.getShort(record) + 1;
+		int numExceptions = buffer.get(position++);
+		for(int i = 0; i < numExceptions; i++) {
+			int length = buffer.getShort(position);
+			String base = readString(position + 2, length);
+			position += 2 + length;
+			int baseRecord = find(table, base);
+			if(baseRecord != -1 && isLemma(baseRecord))
+				return base;
+		}
+		return null;
+	}
+
+	// binary search the table for the key, return its record or -1
+	private int find(int table, String key) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = tableSizes[table] - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int record = buffer.getInt(tableStarts[table] + mid * 4);
+			int c = compareKey(record, keyBytes);
+			if(c < 0)
+				low = mid + 1;
+			else if(c > 0)
+				high = mid - 1;
+			else
+				return record;
+		}
+		return -1;
+	}
+
+	private int compareKey(int record, byte[] key) {
+		int length = buffer.getShort(record);
+		int n = Math.min(length, key.length);
+		for(int i = 0; i < n; i++) {
+			int a = buffer.get(record + 2 + i) & 0xff;
+			int b = key[i] & 0xff;
+			if(a != b)
+				return a - b;
+		}
+		return length - key.length;
+	}
+
+	private String readString(int position, int length) {
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+			bytes[i] = buffer.get(position + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int compareBytes(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for(int i = 0; i < n; i++) {
+			int c = (a[i] & 0xff) - (b[i] & 0xff);
+			if(c != 0)
+				return c;
+		}
+		return a.length - b.length;
+	}
+
+	private static class Record {
+		final byte[] key;
+		boolean isLemma = false;
+		final List<byte[]> exceptions = new ArrayList<>();
+
+		Record(byte[] key) {
+			this.key = key;
+		}
+
+		int size() {
+			int size = 2 + key.length + 2;
+			for(byte[] e : exceptions)
+				size += 2 + e.length;
+			return size;
+		}
+	}
+
+	/**
+	 * Write an image of a WordNet dictionary.
+	 * @param d the dictionary to copy
+	 * @param out where to write the image
+	 * @throws Exception if the dictionary can't be read or the image can't be
+	 * written
+	 */
+	public static void write(Dictionary d, OutputStream out) throws Exception {
+		List<List<Record>> tables = new ArrayList<>();
+		for(POS pos : POS_ORDER) {
+			Map<String, Record> records = new HashMap<>();
+			Iterator<IndexWord> words = d.getIndexWordIterator(pos);
+			while(words.hasNext()) {
+				String lemma = words.next().getLemma().toLowerCase();
+				record(records, lemma).isLemma = true;
+			}
+			Iterator<Exc> exceptions = d.getExceptionIterator(pos);
+			while(exceptions.hasNext()) {
+				Exc exc = exceptions.next();
+				Record r = record(records, exc.getLemma().toLowerCase());
+				for(String base : exc.getExceptions()) {
+					if(r.exceptions.size() < Byte.MAX_VALUE)
+						r.exceptions.add(base.toLowerCase()
+								.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			List<Record> sorted = new ArrayList<>(records.values());
+			sorted.sort((a, b) -> compareBytes(a.key, b.key));
+			tables.add(sorted);
+		}
+
+		DataOutputStream data = new DataOutputStream(
+				new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		int offset = 8;
+		for(List<Record> table : tables)
+			offset += 4 + table.size() * 4;
+		for(List<Record> table : tables) {
+			data.writeInt(table.size());
+			for(Record r : table) {
+				data.writeInt(offset);
+				offset += r.size();
+			}
+		}
+		for(List<Record> table : tables) {
+			for(Record r : table) {
+				data.writeShort(r.key.length);
+				data.write(r.key);
+				data.writeByte(r.isLemma ? 1 : 0);
+				data.writeByte(r.exceptions.size());
+				for(byte[] e : r.exceptions) {
+					data.writeShort(e.length);
+					data.write(e);
+				}
+			}
+		}
+		data.flush();
+	}
+
+	private static Record record(Map<String, Record> records, String key) {
+		Record r = records.get(key);
+		if(r == null) {
+			r = new Record(key.getBytes(StandardCharsets.UTF_8));
+			records.put(key, r);
+		}
+		return r;
+	}
+
+	/**
+	 * Build a lexicon image from the default WordNet resource.
+	 * @param args the file to write, or nothing to write DEFAULT_FILE
+	 * @throws Exception if the image can't be built
+	 */
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : DEFAULT_FILE;
+		Dictionary d = Dictionary.getDefaultResourceInstance();
+		try(OutputStream out = new FileOutputStream(file)) {
+			write(d, out);
+		}
+		System.out.println("Wrote " + file);
+	}
+}
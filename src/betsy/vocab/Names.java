@@ -1,37 +1,204 @@
 package betsy.vocab;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
- * The names class has static methods and variables that keep track of lists of
- * common male/female first names.
+ * The names class keeps a gazetteer of common male and female first names,
+ * loaded from lists ordered from most to least common. Each name has a gender
+ * score between 0 (female) and 1 (male). A name that is in both lists is
+ * scored by how common it is in each one, so "james" is male but "jamie" can
+ * go either way. Names are stored in an open-addressing hash table keyed by
+ * their SymbolTable id, which is already known for every leaf of a WordTree.
+ * The table is loaded once and shared by every conversation.
  * @author jacob
  *
  */
 public class Names {
 	private static final String NAMES_MALE_FILE = "namesMale.txt";
 	private static final String NAMES_FEMALE_FILE = "namesFemale.txt";
-	
+
 	/**
-	 * A list of common male names. Call loadNames() before using.
+	 * The gender score of a word that isn't a known name.
 	 */
-	public static List<String> maleNames;
+	public static final float NOT_A_NAME = -1;
+
 	/**
-	 * A list of common female names. Call loadNames() before using.
+	 * An immutable open-addressing table from word id to gender score.
 	 */
-	public static List<String> femaleNames;
-	
+	private static class Table {
+		final int[] keys;
+		final float[] scores;
+		final int shift;
+
+		Table(int capacity) {
+			int bits = 32 - Integer.numberOfLeadingZeros(capacity * 2 - 1);
+			keys = new int[1 << bits];
+			scores = new float[1 << bits];
+			shift = 32 - bits;
+			Arrays.fill(keys, SymbolTable.NONE);
+		}
+
+		private int slot(int id) {
+			int mask = keys.length - 1;
+			int i = (id * 0x9e3779b1) >>> shift;
+			while(keys[i] != SymbolTable.NONE && keys[i] != id)
+				i = (i + 1) & mask;
+			return i;
+		}
+
+		void put(int id, float score) {
+			int i = slot(id);
+			keys[i] = id;
+			scores[i] = score;
+		}
+
+		float get(int id) {
+			int i = slot(id);
+			if(keys[i] == id)
+				return scores[i];
+			else
+				return NOT_A_NAME;
+		}
+	}
+
+	private static volatile Table table = null;
+
 	/**
-	 * Load the names from files, and store them in maleNames and femaleNames.
+	 * Load the names from files. This only does anything the first time it is
+	 * called.
 	 */
-	public static void loadNames() {
-		maleNames = betsy.BetsyMain.getResourceLines(NAMES_MALE_FILE);
-		femaleNames = betsy.BetsyMain.getResourceLines(NAMES_FEMALE_FILE);
-		for(int i = 0; i < maleNames.size(); i++) {
-			maleNames.set(i, maleNames.get(i).toLowerCase());
-		}
-		for(int i = 0; i < femaleNames.size(); i++) {
-			femaleNames.set(i, femaleNames.get(i).toLowerCase());
+	public static synchronized void loadNames() {
+		if(table != null)
+			return;
+		List<String> male = betsy.BetsyMain.getResourceLines(NAMES_MALE_FILE);
+		List<String> female = betsy.BetsyMain.getResourceLines(
+				NAMES_FEMALE_FILE);
+
+		int[] maleIds = intern(male);
+		int[] femaleIds = intern(female);
+
+		// the lists are sorted by frequency, so a name's rank is used as an
+		// estimate of how common it is (Zipf's law)
+		Table maleWeights = new Table(maleIds.length);
+		for(int i = 0; i < maleIds.length; i++)
+			if(maleWeights.get(maleIds[i]) == NOT_A_NAME)
+				maleWeights.put(maleIds[i], 1.0f / (i + 1));
+
+		Table t = new Table(maleIds.length + femaleIds.length);
+		for(int id : maleIds)
+			t.put(id, 1);
+		for(int i = 0; i < femaleIds.length; i++) {
+			int id = femaleIds[i];
+			float current = t.get(id);
+			if(current == NOT_A_NAME) {
+				t.put(id, 0);
+			} else if(current == 1) {
+				float maleWeight = maleWeights.get(id);
+				float femaleWeight = 1.0f / (i + 1);
+				t.put(id, maleWeight / (maleWeight + femaleWeight));
+			}
 		}
+		table = t;
+	}
+
+	private static int[] intern(List<String> names) {
+		int[] ids = new int[names.size()];
+		for(int i = 0; i < ids.length; i++)
+			ids[i] = SymbolTable.intern(names.get(i).trim().toLowerCase());
+		return ids;
+	}
+
+	/**
+	 * Get how likely a word is to be a male name, rather than a female name.
+	 * Call loadNames() before using.
+	 * @param wordId the SymbolTable id of the word, in lower case
+	 * @return a score from 0 (female) to 1 (male), or NOT_A_NAME
+	 */
+	public static float genderScore(int wordId) {
+		if(wordId == SymbolTable.NONE)
+			return NOT_A_NAME;
+		return table.get(wordId);
+	}
+
+	/**
+	 * Get how likely a word is to be a male name, rather than a female name.
+	 * Call loadNames() before using.
+	 * @param word the word, in lower case
+	 * @return a score from 0 (female) to 1 (male), or NOT_A_NAME
+	 */
+	public static float genderScore(String word) {
+		return genderScore(SymbolTable.lookup(word));
+	}
+
+	/**
+	 * Check if a word is most likely a male name.
+	 * @param wordId the SymbolTable id of the word, in lower case
+	 * @return true if the word is a name that is at least as common for males
+	 * as for females
+	 */
+	public static boolean isMale(int wordId) {
+		return genderScore(wordId) >= 0.5f;
+	}
+
+	/**
+	 * Check if a word is most likely a female name.
+	 * @param wordId the SymbolTable id of the word, in lower case
+	 * @return true if the word is a name that is more common for females than
+	 * for males
+	 */
+	public static boolean isFemale(int wordId) {
+		float score = genderScore(wordId);
+		return score != NOT_A_NAME && score < 0.5f;
+	}
+
+	/**
+	 * Compare the speed of the gazetteer with searching the name lists.
+	 * @param args the number of rounds to run (optional)
+	 */
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		loadNames();
+		List<String> male = betsy.BetsyMain.getResourceLines(NAMES_MALE_FILE);
+		List<String> female = betsy.BetsyMain.getResourceLines(
+				NAMES_FEMALE_FILE);
+		for(int i = 0; i < male.size(); i++)
+			male.set(i, male.get(i).toLowerCase());
+		for(int i = 0; i < female.size(); i++)
+			female.set(i, female.get(i).toLowerCase());
+
+		// look up every name, and some words that aren't names
+		String[] words = new String[male.size() + female.size() + 100];
+		int n = 0;
+		for(String name : male)
+			words[n++] = name;
+		for(String name : female)
+			words[n++] = name;
+		while(n < words.length)
+			words[n++] = "thing" + n;
+		int[] ids = new int[words.length];
+		for(int i = 0; i < ids.length; i++)
+			ids[i] = SymbolTable.lookup(words[i]);
+
+		int found = 0;
+		long start = System.nanoTime();
+		for(int r = 0; r < rounds; r++)
+			for(String word : words)
+				if(male.contains(word) || female.contains(word))
+					found++;
+		long listTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int r = 0; r < rounds; r++)
+			for(int id : ids)
+				if(genderScore(id) != NOT_A_NAME)
+					found++;
+		long tableTime = System.nanoTime() - start;
+
+		long lookups = (long)rounds * words.length;
+		System.out.println("lists: " + (listTime / lookups) + " ns/lookup");
+		System.out.println("gazetteer: " + (tableTime / lookups)
+				+ " ns/lookup");
+		System.out.println("(" + found + " found)");
 	}
 }
@@ -1,6 +1,6 @@
 package betsy.vocab;
 
-import net.sf.extjwnl.data.IndexWord;
+import net.sf.extjwnl.data.POS;
 
 /**
  * A WordInfo describing a noun.
@@ -13,9 +13,9 @@ public class NounInfo extends GenericWordInfo {
 	private final boolean pronoun;
 	private final boolean question;
 	
-	public NounInfo(String word, IndexWord index,
+	public NounInfo(String word, String baseForm,
 			boolean plural, boolean pronoun, boolean question) {
-		super(word, index);
+		super(word, baseForm, POS.NOUN);
 		this.plural = plural;
 		this.pronoun = pronoun;
 		this.question = question;
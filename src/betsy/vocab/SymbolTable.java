@@ -0,0 +1,92 @@
+package betsy.vocab;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A process-wide table that gives every distinct word a small integer id.
+ * Words are not normalized: two words have the same id exactly when they are
+ * equal strings, so "Sky" and "sky" are different words. Each word is stored
+ * once, and getWord() returns that shared instance, so trees and memories
+ * that use the same word don't each keep a copy of it. The table is
+ * thread-safe.
+ * <p>
+ * Ids are never reused or removed, because stored trees, compiled
+ * TreePatterns and Names keep the ids they were given. Ids are only used
+ * within the process -- saved sessions and knowledge images write words as
+ * strings. So that the table doesn't fill up with everything users type,
+ * parsed trees only lookup() their words, and words are interned when a tree
+ * is stored in memory or loaded as knowledge (see WordTree.internWords()).
+ * The table still grows with every distinct word that any session has
+ * stored, for the life of the process. Each new word costs its string plus a
+ * map entry; size() can be used to watch it.
+ * @author jacob
+ *
+ */
+public class SymbolTable {
+
+	/**
+	 * The id returned for words that aren't in the table.
+	 */
+	public static final int NONE = -1;
+
+	private static final ConcurrentHashMap<String, Integer> ids =
+			new ConcurrentHashMap<>();
+	private static volatile String[] words = new String[1024];
+	private static int size = 0;
+
+	/**
+	 * Get the id of a word, adding it to the table if it is new.
+	 * @param word the word
+	 * @return the word's id
+	 */
+	public static int intern(String word) {
+		Integer id = ids.get(word);
+		if(id != null)
+			return id;
+		synchronized(SymbolTable.class) {
+			id = ids.get(word);
+			if(id != null)
+				return id;
+			int newId = size;
+			if(newId == words.length)
+				words = Arrays.copyOf(words, newId * 2);
+			words[newId] = word;
+			size++;
+			// publishing the id makes the array entry visible to readers
+			ids.put(word, newId);
+			return newId;
+		}
+	}
+
+	/**
+	 * Get the id of a word without adding it to the table.
+	 * @param word the word
+	 * @return the word's id, or NONE if it has never been interned
+	 */
+	public static int lookup(String word) {
+		Integer id = ids.get(word);
+		if(id != null)
+			return id;
+		else
+			return NONE;
+	}
+
+	/**
+	 * Get the word with the given id.
+	 * @param id an id returned by intern()
+	 * @return the shared instance of the word
+	 */
+	public static String getWord(int id) {
+		return words[id];
+	}
+
+	/**
+	 * Get the number of words in the table. Ids are between 0 (inclusive)
+	 * and this number (exclusive).
+	 * @return the number of words
+	 */
+	public static synchronized int size() {
+		return size;
+	}
+}
@@ -1,6 +1,6 @@
 package betsy.vocab;
 
-import net.sf.extjwnl.data.IndexWord;
+import net.sf.extjwnl.data.POS;
 
 /**
  * A WordInfo describing a verb.
@@ -24,9 +24,9 @@ public class VerbInfo extends GenericWordInfo {
 	
 	private final VerbType type;
 	
-	public VerbInfo(String word, IndexWord index,
+	public VerbInfo(String word, String baseForm,
 			VerbType type) {
-		super(word, index);
+		super(word, baseForm, POS.VERB);
 		this.type = type;
 	}
 	
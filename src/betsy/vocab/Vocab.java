@@ -3,15 +3,18 @@ package betsy.vocab;
 import betsy.grammar.Tag;
 import betsy.vocab.AdjectiveInfo.AdjectiveType;
 import betsy.vocab.VerbInfo.*;
+import net.sf.extjwnl.JWNLException;
 import net.sf.extjwnl.dictionary.Dictionary;
 import static net.sf.extjwnl.data.POS.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import net.sf.extjwnl.data.IndexWord;
+import net.sf.extjwnl.data.POS;
 
 /**
  * A collection of methods used for analyzing single words.
@@ -20,10 +23,18 @@ import net.sf.extjwnl.data.IndexWord;
  */
 public class Vocab {
 	/**
-	 * A WordNet dictionary.
+	 * A WordNet dictionary. If a lexicon image is available, this isn't
+	 * loaded until a word comes up that the image can't answer for. Use
+	 * getDictionary() instead of reading this directly.
 	 */
 	public static Dictionary d;
 	
+	/**
+	 * A precompiled image of the WordNet lemmas and exceptions, or null if
+	 * there isn't one. See LexiconImage.
+	 */
+	private static LexiconImage lexicon;
+	
 	private static final String CONTRACTIONS_FILE = "contractions.txt";
 	private static final String PAST_TENSE_VERBS_FILE = "pastTense.txt";
 	
@@ -43,12 +54,55 @@ public class Vocab {
 	 */
 	public static void init() {
 		try {
-			d = Dictionary.getDefaultResourceInstance();
-		} catch (Exception e) {
+			lexicon = LexiconImage.openDefault();
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		if(lexicon == null)
+			getDictionary();
 		loadContractions();
 		loadPastTenseVerbs();
+		Inflector.precompute();
+	}
+	
+	/**
+	 * Get the WordNet dictionary, loading it if it hasn't been loaded yet.
+	 * @return the dictionary, or null if it couldn't be loaded
+	 */
+	public static synchronized Dictionary getDictionary() {
+		if(d == null) {
+			try {
+				d = Dictionary.getDefaultResourceInstance();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		return d;
+	}
+	
+	/**
+	 * Find the base form (lemma) of a word in WordNet. Closed-class words
+	 * (see ClosedClassWord) are never looked up; their base form is the word
+	 * in lowercase, as WordNet would give it. The lexicon image is used if
+	 * there is one and it covers the word; otherwise the dictionary is used.
+	 * @param pos the part of speech of the word
+	 * @param word the word to look up
+	 * @return the word's lemma, or null if it isn't in WordNet
+	 * @throws JWNLException if the dictionary lookup fails
+	 */
+	public static String lookupBaseForm(POS pos, String word)
+			throws JWNLException {
+		ClosedClassWord closed = ClosedClassWord.lookup(word);
+		if(closed != null)
+			return closed.getWord();
+		if(lexicon != null && lexicon.covers(word))
+			return lexicon.lookupBaseForm(pos, word);
+		IndexWord index = WordNetCache.lookupIndexWord(getDictionary(), pos,
+				word);
+		if(index != null)
+			return index.getLemma();
+		else
+			return null;
 	}
 	
 	private static void loadContractions() {
@@ -120,7 +174,7 @@ public class Vocab {
 	 */
 	public static NounInfo getNoun(String s, Tag tag) {
 		try {
-			IndexWord index = d.lookupIndexWord(NOUN, s);
+			String baseForm = lookupBaseForm(NOUN, s);
 			boolean plural, pronoun;
 			boolean question = false;
 			switch(tag) {
@@ -152,7 +206,7 @@ public class Vocab {
 			default:
 				return null;
 			}
-			return new NounInfo(s, index, plural, pronoun, question);
+			return new NounInfo(s, baseForm, plural, pronoun, question);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
@@ -168,7 +222,7 @@ public class Vocab {
 	 */
 	public static VerbInfo getVerb(String s, Tag tag) {
 		try {
-			IndexWord index = d.lookupIndexWord(VERB, s);
+			String baseForm = lookupBaseForm(VERB, s);
 			VerbType type;
 			switch(tag) {
 			case MODAL_VERB: // can, could, (dare), may, might, must, ought
@@ -194,7 +248,7 @@ public class Vocab {
 			default:
 				return null;
 			}
-			return new VerbInfo(s, index, type);
+			return new VerbInfo(s, baseForm, type);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
@@ -210,7 +264,7 @@ public class Vocab {
 	 */
 	public static AdjectiveInfo getAdjective(String s, Tag tag) {
 		try {
-			IndexWord index = d.lookupIndexWord(ADJECTIVE, s);
+			String baseForm = lookupBaseForm(ADJECTIVE, s);
 			AdjectiveType type;
 			switch(tag) {
 			case ADJECTIVE:
@@ -225,7 +279,7 @@ public class Vocab {
 			default:
 				return null;
 			}
-			return new AdjectiveInfo(s, index, type);
+			return new AdjectiveInfo(s, baseForm, type);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
@@ -241,7 +295,7 @@ public class Vocab {
 	 */
 	public static AdverbInfo getAdverb(String s, Tag tag) {
 		try {
-			IndexWord index = d.lookupIndexWord(ADVERB, s);
+			String baseForm = lookupBaseForm(ADVERB, s);
 			AdjectiveType type;
 			switch(tag) {
 			case ADVERB:
@@ -256,7 +310,7 @@ public class Vocab {
 			default:
 				return null;
 			}
-			return new AdverbInfo(s, index, type);
+			return new AdverbInfo(s, baseForm, type);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
@@ -271,35 +325,10 @@ public class Vocab {
 	 * @return the word, possibly swapped with other pronouns
 	 */
 	public static String swapPronoun(String pronoun) {
-		pronoun = pronoun.toLowerCase();
-		
-		// canonical pronouns
-		if(pronoun.equals("she"))
-			return "her";
-		if(pronoun.equals("he"))
-			return "him";
-		
-		if(pronoun.equals("i"))
-			return "you";
-		if(pronoun.equals("me"))
-			return "you";
-		if(pronoun.equals("you"))
-			return "me";
-		
-		if(pronoun.equals("myself"))
-			return "yourself";
-		if(pronoun.equals("yourself"))
-			return "myself";
-		if(pronoun.equals("yourselves"))
-			return "ourselves";
-		
-		// are these pronouns?
-		if(pronoun.equals("mine"))
-			return "yours";
-		if(pronoun.equals("yours"))
-			return "mine";
-		
-		return pronoun;
+		ClosedClassWord w = ClosedClassWord.lookup(pronoun);
+		if(w != null)
+			return w.getSwapped();
+		return pronoun.toLowerCase();
 	}
 	
 	/**
@@ -309,26 +338,10 @@ public class Vocab {
 	 * @return the word, possibly swapped with other pronouns
 	 */
 	public static String pronounPossessor(String pronoun) {
-		pronoun = pronoun.toLowerCase();
-		
-		if(pronoun.equals("my"))
-			return "you";
-		if(pronoun.equals("your"))
-			return "me";
-		if(pronoun.equals("his"))
-			return "him";
-		if(pronoun.equals("her"))
-			return "her"; //...
-		if(pronoun.equals("its"))
-			return "it";
-		if(pronoun.equals("our"))
-			return "us";
-		if(pronoun.equals("their"))
-			return "them";
-		if(pronoun.equals("whose"))
-			return "who";
-		
-		return pronoun;
+		ClosedClassWord w = ClosedClassWord.lookup(pronoun);
+		if(w != null)
+			return w.getPossessor();
+		return pronoun.toLowerCase();
 	}
 	
 	/**
@@ -338,28 +351,8 @@ public class Vocab {
 	 * @return true if it is a question word
 	 */
 	public static boolean isAWhWord(String word) {
-		word = word.toLowerCase();
-		
-		if(word.equals("who"))
-			return true;
-		if(word.equals("what"))
-			return true;
-		if(word.equals("when"))
-			return true;
-		if(word.equals("where"))
-			return true;
-		if(word.equals("why"))
-			return true;
-		if(word.equals("how"))
-			return true;
-		if(word.equals("which"))
-			return true;
-		if(word.equals("whom"))
-			return true;
-		if(word.equals("whose"))
-			return true;
-		
-		return false;
+		ClosedClassWord w = ClosedClassWord.lookup(word);
+		return w != null && w.isWhWord();
 	}
 	
 	/**
@@ -369,16 +362,7 @@ public class Vocab {
 	 * @return the noun's plural form
 	 */
 	public static String makePlural(String noun) {
-		// http://www.edufind.com/english-grammar/plural-nouns/
-		int len = noun.length();
-		if(noun.endsWith("s") || noun.endsWith("x") || noun.endsWith("z")
-				|| noun.endsWith("ch") || noun.endsWith("sh"))
-			return noun + "es";
-		else if(noun.charAt(len - 1) == 'y'
-				&& isConsonant(noun.charAt(len - 2)))
-			return noun.substring(0, len - 1) + "ies";
-		else
-			return noun + "s";
+		return Inflector.makePlural(noun);
 	}
 	
 	/**
@@ -397,34 +381,10 @@ public class Vocab {
 	 * @return the possessive form of the noun
 	 */
 	public static String makePossessive(String noun) {
-		noun = noun.toLowerCase();
-		
-		if(noun.equals("me"))
-			return "my";
-		if(noun.equals("I"))
-			return "my";
-		if(noun.equals("you"))
-			return "your";
-		if(noun.equals("him"))
-			return "his";
-		if(noun.equals("he"))
-			return "his";
-		if(noun.equals("her"))
-			return "her";
-		if(noun.equals("she"))
-			return "her";
-		if(noun.equals("it"))
-			return "its";
-		if(noun.equals("us"))
-			return "our";
-		if(noun.equals("they"))
-			return "their";
-		if(noun.equals("them"))
-			return "their";
-		if(noun.equals("who"))
-			return "whose";
-		
-		return noun + "'s";
+		ClosedClassWord w = ClosedClassWord.lookup(noun);
+		if(w != null)
+			return w.getPossessive();
+		return noun.toLowerCase() + "'s";
 	}
 	
 	/**
@@ -436,30 +396,10 @@ public class Vocab {
 	 * used in the subject of a sentence.
 	 */
 	public static String makePronounSubject(String pronoun) {
-		pronoun = pronoun.toLowerCase();
-		
-		if(pronoun.equals("me"))
-			return "I";
-		if(pronoun.equals("him"))
-			return "he";
-		if(pronoun.equals("her"))
-			return "she";
-		if(pronoun.equals("them"))
-			return "they";
-		
-		return pronoun;
-	}
-	
-	/**
-	 * the past, the present, and the future walked into a bar.
-	 * it was tense.
-	 */
-	private enum TenseTime {
-		PAST, PRESENT, FUTURE, GENERIC
-	}
-	
-	private enum TenseFrame {
-		SIMPLE, PERFECT, CONTINUOUS, PERFECT_CONTINUOUS
+		ClosedClassWord w = ClosedClassWord.lookup(pronoun);
+		if(w != null)
+			return w.getSubject();
+		return pronoun.toLowerCase();
 	}
 	
 	/**
@@ -473,111 +413,9 @@ public class Vocab {
 	 * "CONTINUOUS", or "PERFECT_CONTINUOUS"
 	 * @return the verb word, in the given tense
 	 */
-	@SuppressWarnings("incomplete-switch")
 	public static String conjugateVerb(String verb,
 			String tenseTime, String tenseFrame) {
-		//TODO: recognize different pronouns, fix conjugations
-		
-		TenseTime time = TenseTime.GENERIC;
-		TenseFrame frame = TenseFrame.SIMPLE;
-		
-		if(tenseTime != null && !tenseTime.isEmpty())
-			time = TenseTime.valueOf(tenseTime);
-		if(tenseFrame != null && !tenseFrame.isEmpty())
-			frame = TenseFrame.valueOf(tenseFrame);
-		
-		boolean isBe = verb.equals("be");
-		
-		
-		switch(frame) {
-		case SIMPLE:
-			if(isBe) {
-				switch(time) {
-				case PAST:
-					verb = "was";
-					break;
-				case PRESENT:
-					verb = "is";
-					break;
-				case FUTURE:
-					verb = "will be";
-					break;
-				}
-			} else {
-				switch(time) {
-				case PAST:
-					verb = verbAddEd(verb);
-					break;
-				case PRESENT:
-					verb = verb + "s";
-					break;
-				case FUTURE:
-					verb = "will " + verb;
-					break;
-				}
-			}
-			break;
-		case CONTINUOUS:
-			verb = verb + "ing";
-			switch(time) {
-			case PAST:
-				verb = "was " + verb;
-				break;
-			case PRESENT:
-				verb = "is " + verb;
-				break;
-			case FUTURE:
-				verb = "will be " + verb;
-				break;
-			}
-			break;
-		case PERFECT:
-			if(isBe)
-				verb = "been";
-			else
-				verb = verbAddEd(verb);
-			switch(time) {
-			case PAST:
-				verb = "had " + verb;
-				break;
-			case PRESENT:
-				verb = "has " + verb;
-				break;
-			case FUTURE:
-				verb = "will have " + verb;
-				break;
-			}
-			break;
-		case PERFECT_CONTINUOUS:
-			verb = verb + "ing";
-			switch(time) {
-			case PAST:
-				verb = "had been " + verb;
-				break;
-			case PRESENT:
-				verb = "has been " + verb;
-				break;
-			case FUTURE:
-				verb = "will have been " + verb;
-				break;
-			}
-			break;
-		} // end of frame switch
-		
-		return verb;
-	}
-	
-	private static String verbAddEd(String verb) {
-		// special cases are common with past tense verbs
-		// http://www.linguasorb.com/english/verbs/most-common-verbs/
-		if(pastTenseVerbs.containsKey(verb))
-			return pastTenseVerbs.get(verb);
-		
-		if(verb.endsWith("e"))
-			return verb + "d";
-		if(verb.endsWith("y"))
-			return verb.substring(0, verb.length() - 1) + "ied";
-		return verb + "ed";
+		return Inflector.conjugateVerb(verb, tenseTime, tenseFrame);
 	}
 	
 	/**
@@ -587,9 +425,7 @@ public class Vocab {
 	 * @return the comparative form of the word
 	 */
 	public static String makeComparative(String adjective) {
-		//TODO: more intelligent conjugations
-		//see: http://grammar.yourdictionary.com/parts-of-speech/adjectives/what-is-a-superlative-adjective.html
-		return "more " + adjective;
+		return Inflector.makeComparative(adjective);
 	}
 	
 	/**
@@ -599,7 +435,6 @@ public class Vocab {
 	 * @return the superlative form of the word
 	 */
 	public static String makeSuperlative(String adjective) {
-		//TODO: more intelligent conjugations
-		return "most " + adjective;
+		return Inflector.makeSuperlative(adjective);
 	}
 }
@@ -0,0 +1,123 @@
+package betsy.vocab;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.data.IndexWord;
+import net.sf.extjwnl.data.POS;
+import net.sf.extjwnl.dictionary.Dictionary;
+
+/**
+ * A bounded cache in front of WordNet's lookupIndexWord(). There is one map
+ * for each part of speech, keyed by the word that was looked up. Words that
+ * aren't in WordNet are cached too, so they are only looked up once. The cache
+ * is static and thread-safe, so it can be shared by any number of
+ * conversations.
+ * @author jacob
+ *
+ */
+public class WordNetCache {
+
+	/**
+	 * The maximum number of words cached for each part of speech.
+	 */
+	public static final int CAPACITY = 8192;
+
+	/**
+	 * Cached result of a lookup. index is null if the word isn't in WordNet.
+	 */
+	private static class Entry {
+		final IndexWord index;
+
+		Entry(IndexWord index) {
+			this.index = index;
+		}
+	}
+
+	private static final Map<POS, Map<String, Entry>> caches;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	static {
+		caches = new EnumMap<>(POS.class);
+		for(POS pos : POS.values()) {
+			caches.put(pos, new ConcurrentLinkedHashMap.Builder<String, Entry>()
+					.maximumWeightedCapacity(CAPACITY)
+					.build());
+		}
+	}
+
+	/**
+	 * Look up a word in the dictionary, or get the result of an earlier
+	 * lookup of the same word.
+	 * @param d the WordNet dictionary to use if the word isn't cached
+	 * @param pos the part of speech of the word
+	 * @param word the word to look up
+	 * @return the IndexWord for the word (or its base form), or null if it
+	 * isn't in WordNet
+	 * @throws JWNLException if the dictionary lookup fails
+	 */
+	public static IndexWord lookupIndexWord(Dictionary d, POS pos, String word)
+			throws JWNLException {
+		Map<String, Entry> cache = caches.get(pos);
+		Entry entry = cache.get(word);
+		if(entry != null) {
+			hits.incrementAndGet();
+			return entry.index;
+		}
+
+		misses.incrementAndGet();
+		IndexWord index;
+		// extjwnl's morphological processor isn't safe to use from more than
+		// one thread at a time
+		synchronized(d) {
+			index = d.lookupIndexWord(pos, word);
+		}
+		cache.put(word, new Entry(index));
+		return index;
+	}
+
+	/**
+	 * Get the number of lookups that were answered from the cache.
+	 * @return the number of cache hits
+	 */
+	public static long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of lookups that had to go to the dictionary.
+	 * @return the number of cache misses
+	 */
+	public static long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the fraction of lookups that were answered from the cache.
+	 * @return a number between 0 and 1, or 0 if nothing has been looked up
+	 */
+	public static double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		if(total == 0)
+			return 0;
+		else
+			return (double)h / (double)total;
+	}
+
+	/**
+	 * Remove all cached words, and reset the hit and miss counts.
+	 */
+	public static void clear() {
+		for(Map<String, Entry> cache : caches.values())
+			cache.clear();
+		hits.set(0);
+		misses.set(0);
+	}
+}